@@ -0,0 +1,201 @@
+package lamer.groovy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link GroovyArray#eachAsync(List, Executor, int, GroovyArray.ArrayEach)}和
+ * {@link GroovyArray#collectAsync(List, Executor, int, GroovyArray.ArrayCollectTransform)}的结果
+ * <p>
+ * 最多向executor提交maxInFlight个worker，每个worker执行完一个元素后自己领取下一个索引，
+ * 所以同一时刻最多有maxInFlight个回调在运行，不会一次把整个数组塞进executor的队列。
+ * <p>
+ * 第一个抛出的异常会立即结束这个future，{@link #get()}抛出包装了它的{@link ExecutionException}，
+ * 之后不会再领取新的元素；已经在运行的回调会执行完，{@link #cancel(boolean)}同样如此，不会中断线程。
+ */
+public final class ArrayFuture<R> implements Future<R> {
+
+    private static final int RUNNING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final List<?> mSource;
+    private final GroovyArray.ArrayEach<Object> mEach;
+    private final GroovyArray.ArrayCollectTransform<Object, Object> mTransform;
+    private final Object[] mResults;
+
+    private final AtomicInteger mState = new AtomicInteger(RUNNING);
+    private final AtomicInteger mNext = new AtomicInteger();
+    private final AtomicInteger mWorkers = new AtomicInteger();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private volatile Throwable mFailure;
+    private volatile R mValue;
+
+    @SuppressWarnings("unchecked")
+    private ArrayFuture(List<?> source, GroovyArray.ArrayEach<?> each, GroovyArray.ArrayCollectTransform<?, ?> transform) {
+        this.mSource = source;
+        this.mEach = (GroovyArray.ArrayEach<Object>) each;
+        this.mTransform = (GroovyArray.ArrayCollectTransform<Object, Object>) transform;
+        this.mResults = transform == null || source == null ? null : new Object[source.size()];
+    }
+
+    static <T> ArrayFuture<Void> each(List<T> ds, Executor executor, int maxInFlight, GroovyArray.ArrayEach<T> each) {
+        ArrayFuture<Void> future = new ArrayFuture<>(ds, each, null);
+        future.start(executor, maxInFlight);
+        return future;
+    }
+
+    static <T, R> ArrayFuture<List<R>> collect(List<T> ds, Executor executor, int maxInFlight,
+                                                GroovyArray.ArrayCollectTransform<T, R> transform) {
+        ArrayFuture<List<R>> future = new ArrayFuture<>(ds, null, transform);
+        future.start(executor, maxInFlight);
+        return future;
+    }
+
+    private void start(Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        final int count = mSource == null ? 0 : mSource.size();
+        final int workers = Math.min(maxInFlight, count);
+        if (workers == 0) {
+            complete();
+            return;
+        }
+        // 先计满，避免第一个worker很快跑完时误以为自己是最后一个
+        mWorkers.set(workers);
+        for (int i = 0; i < workers; i++) {
+            try {
+                executor.execute(mWorker);
+            } catch (RuntimeException e) {
+                fail(e);
+                // 没有提交成功的worker直接计为退出
+                for (int j = i; j < workers; j++) {
+                    exitWorker();
+                }
+                return;
+            }
+        }
+    }
+
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            final int count = mSource.size();
+            try {
+                while (mState.get() == RUNNING) {
+                    int index = mNext.getAndIncrement();
+                    if (index >= count) {
+                        break;
+                    }
+                    Object data = mSource.get(index);
+                    if (mTransform != null) {
+                        mResults[index] = mTransform.transform(data);
+                    } else {
+                        mEach.each(data);
+                    }
+                }
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                exitWorker();
+            }
+        }
+    };
+
+    private void exitWorker() {
+        if (mWorkers.decrementAndGet() == 0 && mState.get() == RUNNING) {
+            complete();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete() {
+        if (mResults != null && mResults.length > 0) {
+            // 和collect一样去掉null
+            List<Object> collects = new ArrayList<>(mResults.length);
+            for (Object result : mResults) {
+                if (result != null) {
+                    collects.add(result);
+                }
+            }
+            mValue = (R) collects;
+        }
+        if (mState.compareAndSet(RUNNING, COMPLETED)) {
+            mDone.countDown();
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (mState.compareAndSet(RUNNING, FAILED)) {
+            mFailure = e;
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * 停止领取新的元素，正在运行的回调不会被中断
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (mState.compareAndSet(RUNNING, CANCELLED)) {
+            mDone.countDown();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mState.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mState.get() != RUNNING;
+    }
+
+    /**
+     * @return each为null；collect为按原顺序排列、去掉null后的结果，输入为空时为null
+     */
+    @Override
+    public R get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return report();
+    }
+
+    @Override
+    public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    /**
+     * @return 已经执行过回调的元素数量，包括正在执行的
+     */
+    public int started() {
+        return Math.min(mNext.get(), mSource == null ? 0 : mSource.size());
+    }
+
+    private R report() throws ExecutionException {
+        switch (mState.get()) {
+            case FAILED:
+                throw new ExecutionException(mFailure);
+            case CANCELLED:
+                throw new CancellationException();
+            default:
+                return mValue;
+        }
+    }
+}
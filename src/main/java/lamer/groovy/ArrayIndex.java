@@ -0,0 +1,222 @@
+package lamer.groovy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在List或数组上按{@link GroovyArray.ArrayCollectTransform}提取的key预先建立的索引，
+ * 建一次后可以反复查找，代替每次都线性扫描的{@link GroovyArray#find(List, GroovyArray.ArrayFinder)}
+ * <p>
+ * 通过{@link GroovyArray#sortedIndex(List, GroovyArray.ArrayCollectTransform)}（O(log n)，支持范围查询）
+ * 和{@link GroovyArray#hashIndex(List, GroovyArray.ArrayCollectTransform)}（O(1)）创建。
+ * 索引是建立时的快照，原数据修改后需要重新建立。key为null的元素不会进入索引。
+ */
+public interface ArrayIndex<T, K> {
+
+    /**
+     * @return key相同的元素中，在原数据里最靠前的一个，没有则为null
+     */
+    T find(K key);
+
+    /**
+     * @return key相同的元素中，在原数据里最靠前的一个的索引，没有则为-1
+     */
+    int findIndex(K key);
+
+    /**
+     * @return 进入索引的元素数量
+     */
+    int size();
+
+    final class Sorted<T, K extends Comparable<? super K>> implements ArrayIndex<T, K> {
+
+        private final Object[] mKeys;
+        private final Object[] mValues;
+        private final int[] mPositions;
+
+        Sorted(List<T> ds, GroovyArray.ArrayCollectTransform<T, K> transform) {
+            final int count = ds == null ? 0 : ds.size();
+            List<Entry<K>> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                T data = ds.get(i);
+                K key = transform.transform(data);
+                if (key != null) {
+                    entries.add(new Entry<>(key, data, i));
+                }
+            }
+            // 稳定排序，key相同时保持原顺序
+            Collections.sort(entries);
+            final int size = entries.size();
+            mKeys = new Object[size];
+            mValues = new Object[size];
+            mPositions = new int[size];
+            for (int i = 0; i < size; i++) {
+                Entry<K> entry = entries.get(i);
+                mKeys[i] = entry.key;
+                mValues[i] = entry.value;
+                mPositions[i] = entry.position;
+            }
+        }
+
+        @Override
+        public T find(K key) {
+            int rank = rankOf(key);
+            return rank < 0 ? null : get(rank);
+        }
+
+        @Override
+        public int findIndex(K key) {
+            int rank = rankOf(key);
+            return rank < 0 ? -1 : mPositions[rank];
+        }
+
+        @Override
+        public int size() {
+            return mKeys.length;
+        }
+
+        /**
+         * @return 排序后第rank个元素
+         */
+        @SuppressWarnings("unchecked")
+        public T get(int rank) {
+            return (T) mValues[rank];
+        }
+
+        /**
+         * @return 排序后第rank个元素在原数据中的索引
+         */
+        public int positionOf(int rank) {
+            return mPositions[rank];
+        }
+
+        /**
+         * @return 第一个key不小于给定key的排序位置，都小于时为{@link #size()}
+         * @throws NullPointerException key为null
+         */
+        public int lowerBound(K key) {
+            int low = 0;
+            int high = mKeys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keyAt(mid).compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return 第一个key大于给定key的排序位置，都不大于时为{@link #size()}
+         * @throws NullPointerException key为null
+         */
+        public int upperBound(K key) {
+            int low = 0;
+            int high = mKeys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keyAt(mid).compareTo(key) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return key在[from, to)之间的元素，按key排序
+         * @throws NullPointerException from或to为null
+         */
+        @SuppressWarnings("unchecked")
+        public List<T> range(K from, K to) {
+            int start = lowerBound(from);
+            int end = lowerBound(to);
+            if (start >= end) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList((List<T>) Arrays.asList(mValues).subList(start, end));
+        }
+
+        private int rankOf(K key) {
+            if (key == null) {
+                // null不会进入索引
+                return -1;
+            }
+            int rank = lowerBound(key);
+            if (rank < mKeys.length && key.compareTo(keyAt(rank)) == 0) {
+                return rank;
+            }
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        private K keyAt(int rank) {
+            return (K) mKeys[rank];
+        }
+
+        private static final class Entry<K extends Comparable<? super K>> implements Comparable<Entry<K>> {
+            final K key;
+            final Object value;
+            final int position;
+
+            Entry(K key, Object value, int position) {
+                this.key = key;
+                this.value = value;
+                this.position = position;
+            }
+
+            @Override
+            public int compareTo(Entry<K> o) {
+                return key.compareTo(o.key);
+            }
+        }
+    }
+
+    final class Hash<T, K> implements ArrayIndex<T, K> {
+
+        private final Map<K, Integer> mPositions;
+        /**
+         * 建立时复制一份，原数据之后的修改不影响索引
+         */
+        private final Object[] mValues;
+
+        Hash(List<T> ds, GroovyArray.ArrayCollectTransform<T, K> transform) {
+            final int count = ds == null ? 0 : ds.size();
+            mValues = ds == null ? new Object[0] : ds.toArray();
+            mPositions = new HashMap<>(Math.max((int) (count / .75f) + 1, 16));
+            // 倒序放入，key重复时保留最靠前的
+            for (int i = count - 1; i >= 0; i--) {
+                @SuppressWarnings("unchecked")
+                K key = transform.transform((T) mValues[i]);
+                if (key != null) {
+                    mPositions.put(key, i);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T find(K key) {
+            Integer position = mPositions.get(key);
+            return position == null ? null : (T) mValues[position];
+        }
+
+        @Override
+        public int findIndex(K key) {
+            Integer position = mPositions.get(key);
+            return position == null ? -1 : position;
+        }
+
+        @Override
+        public int size() {
+            return mPositions.size();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package lamer.groovy;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 数组或List上一段连续区间的只读视图，不复制元素
+ * <p>
+ * {@link GroovyArray#collate(List, int)}、{@link GroovyArray#window(List, int, int)}返回的每一段都是它；
+ * {@link GroovyArray#eachBatch(List, int, GroovyArray.ArrayEach)}会复用同一个实例，回调结束后不要再持有。
+ * 视图直接读原数据，原数据在使用期间不应该被修改。
+ * 只有原数据是数组或{@link RandomAccess}的List时，视图才实现{@link RandomAccess}。
+ */
+public class ArraySlice<T> extends AbstractList<T> {
+
+    private final T[] mArray;
+    private final List<T> mList;
+    private int mOffset;
+    private int mLength;
+
+    private ArraySlice(T[] array, List<T> list, int offset, int length) {
+        this.mArray = array;
+        this.mList = list;
+        reset(offset, length);
+    }
+
+    public static <T> ArraySlice<T> of(T[] array, int offset, int length) {
+        return create(array, null, offset, length);
+    }
+
+    public static <T> ArraySlice<T> of(List<T> list, int offset, int length) {
+        return create(null, list, offset, length);
+    }
+
+    private static <T> ArraySlice<T> create(T[] array, List<T> list, int offset, int length) {
+        if (isRandomAccess(array, list)) {
+            return new RandomAccessSlice<>(array, list, offset, length);
+        }
+        return new ArraySlice<>(array, list, offset, length);
+    }
+
+    private static boolean isRandomAccess(Object[] array, List<?> list) {
+        return array != null || list instanceof RandomAccess;
+    }
+
+    /**
+     * 移动到另一段区间，用于复用同一个视图
+     */
+    public ArraySlice<T> reset(int offset, int length) {
+        int sourceSize = mArray != null ? mArray.length : mList.size();
+        if (offset < 0 || length < 0 || offset + length > sourceSize) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + sourceSize);
+        }
+        this.mOffset = offset;
+        this.mLength = length;
+        return this;
+    }
+
+    public int offset() {
+        return mOffset;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + mLength);
+        }
+        return mArray != null ? mArray[mOffset + index] : mList.get(mOffset + index);
+    }
+
+    @Override
+    public int size() {
+        return mLength;
+    }
+
+    private static final class RandomAccessSlice<T> extends ArraySlice<T> implements RandomAccess {
+        RandomAccessSlice(T[] array, List<T> list, int offset, int length) {
+            super(array, list, offset, length);
+        }
+    }
+
+    /**
+     * 按size、step切出的一串区间，get时才创建对应的{@link ArraySlice}
+     */
+    static class Windows<T> extends AbstractList<List<T>> {
+        private final T[] mArray;
+        private final List<T> mList;
+        private final int mSourceSize;
+        private final int mSize;
+        private final int mStep;
+        private final int mCount;
+
+        /**
+         * @param keepRemainder 为true时保留末尾不足size的一段
+         */
+        static <T> Windows<T> of(T[] array, List<T> list, int size, int step, boolean keepRemainder) {
+            if (isRandomAccess(array, list)) {
+                return new RandomAccessWindows<>(array, list, size, step, keepRemainder);
+            }
+            return new Windows<>(array, list, size, step, keepRemainder);
+        }
+
+        static void check(int size, int step) {
+            if (size <= 0 || step <= 0) {
+                throw new IllegalArgumentException("size and step must be positive: " + size + ", " + step);
+            }
+        }
+
+        private Windows(T[] array, List<T> list, int size, int step, boolean keepRemainder) {
+            check(size, step);
+            this.mArray = array;
+            this.mList = list;
+            this.mSourceSize = array != null ? array.length : list.size();
+            this.mSize = size;
+            this.mStep = step;
+            if (keepRemainder) {
+                this.mCount = (mSourceSize + step - 1) / step;
+            } else {
+                this.mCount = mSourceSize < size ? 0 : (mSourceSize - size) / step + 1;
+            }
+        }
+
+        @Override
+        public List<T> get(int index) {
+            if (index < 0 || index >= mCount) {
+                throw new IndexOutOfBoundsException("index=" + index + " size=" + mCount);
+            }
+            int offset = index * mStep;
+            int length = Math.min(mSize, mSourceSize - offset);
+            return create(mArray, mList, offset, length);
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+    }
+
+    private static final class RandomAccessWindows<T> extends Windows<T> implements RandomAccess {
+        RandomAccessWindows(T[] array, List<T> list, int size, int step, boolean keepRemainder) {
+            super(array, list, size, step, keepRemainder);
+        }
+    }
+
+    /**
+     * 按索引表读取原数据的视图；reversed时从to往from读，用于partition中从尾部倒着填充的那一半
+     */
+    static class Indexed<T> extends AbstractList<T> {
+        private final T[] mArray;
+        private final List<T> mList;
+        private final int[] mIndices;
+        private final int mFrom;
+        private final int mTo;
+        private final boolean mReversed;
+
+        static <T> Indexed<T> of(T[] array, List<T> list, int[] indices, int from, int to, boolean reversed) {
+            if (isRandomAccess(array, list)) {
+                return new RandomAccessIndexed<>(array, list, indices, from, to, reversed);
+            }
+            return new Indexed<>(array, list, indices, from, to, reversed);
+        }
+
+        private Indexed(T[] array, List<T> list, int[] indices, int from, int to, boolean reversed) {
+            this.mArray = array;
+            this.mList = list;
+            this.mIndices = indices;
+            this.mFrom = from;
+            this.mTo = to;
+            this.mReversed = reversed;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= mTo - mFrom) {
+                throw new IndexOutOfBoundsException("index=" + index + " size=" + (mTo - mFrom));
+            }
+            int position = mIndices[mReversed ? mTo - 1 - index : mFrom + index];
+            return mArray != null ? mArray[position] : mList.get(position);
+        }
+
+        @Override
+        public int size() {
+            return mTo - mFrom;
+        }
+    }
+
+    private static final class RandomAccessIndexed<T> extends Indexed<T> implements RandomAccess {
+        RandomAccessIndexed(T[] array, List<T> list, int[] indices, int from, int to, boolean reversed) {
+            super(array, list, indices, from, to, reversed);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package lamer.groovy;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * 布隆过滤器，用于在超大集合上做成员判断
+ * <p>
+ * {@link #mightContain(Object)} 为false时元素一定不在集合中；为true时有{@link #expectedFpp()}的概率误判。
+ * 每个元素只占 -ln(fpp) / ln(2)^2 个bit（1%误判率约9.6bit），比{@code HashSet<String>}小两个数量级。
+ * <p>
+ * 可以通过{@link GroovySet#bloom(java.util.Set, double)}、{@link GroovyArray#bloom(java.util.List, double)}
+ * 从已有的集合创建，用{@link #writeTo(File)}和{@link #readFrom(File)}持久化。
+ * <p>
+ * {@link #put(Object)}不是线程安全的，构建完成后的并发{@link #mightContain(Object)}是安全的。
+ */
+public final class BloomFilter<T> {
+
+    private static final int MAGIC = 0x47424631; // "GBF1"
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int MAX_HASH_COUNT = 30;
+
+    private final long[] mWords;
+    private final long mBitSize;
+    private final int mHashCount;
+    private final Hasher<? super T> mHasher;
+    private long mCount;
+
+    private BloomFilter(long[] words, int hashCount, Hasher<? super T> hasher) {
+        this.mWords = words;
+        this.mBitSize = (long) words.length * Long.SIZE;
+        this.mHashCount = hashCount;
+        this.mHasher = hasher == null ? DEFAULT_HASHER : hasher;
+    }
+
+    public static <T> BloomFilter<T> create(int expectedInsertions, double fpp) {
+        return create(expectedInsertions, fpp, null);
+    }
+
+    /**
+     * @param expectedInsertions 预计插入的元素数量
+     * @param fpp                期望的误判率，(0, 1)
+     * @param hasher             元素的64位hash，为null时CharSequence按字符计算，其余使用hashCode
+     */
+    public static <T> BloomFilter<T> create(int expectedInsertions, double fpp, Hasher<? super T> hasher) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        }
+        long n = Math.max(expectedInsertions, 1);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((bits + Long.SIZE - 1) / Long.SIZE, Integer.MAX_VALUE - 8);
+        int hashCount = (int) Math.round((double) words * Long.SIZE / n * Math.log(2));
+        hashCount = Math.max(1, Math.min(hashCount, MAX_HASH_COUNT));
+        return new BloomFilter<T>(new long[Math.max(words, 1)], hashCount, hasher);
+    }
+
+    public void put(T it) {
+        if (it == null) {
+            return;
+        }
+        long hash1 = mHasher.hash(it);
+        long hash2 = secondHash(hash1);
+        long combined = hash1;
+        for (int i = 0; i < mHashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % mBitSize;
+            mWords[(int) (index >>> 6)] |= 1L << index;
+            combined += hash2;
+        }
+        mCount++;
+    }
+
+    public void putAll(Collection<? extends T> ds) {
+        if (ds == null) {
+            return;
+        }
+        for (T data : ds) {
+            put(data);
+        }
+    }
+
+    public boolean mightContain(T it) {
+        if (it == null) {
+            return false;
+        }
+        long hash1 = mHasher.hash(it);
+        long hash2 = secondHash(hash1);
+        long combined = hash1;
+        for (int i = 0; i < mHashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % mBitSize;
+            if ((mWords[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+            combined += hash2;
+        }
+        return true;
+    }
+
+    /**
+     * @return 按当前置位比例估算的误判率
+     */
+    public double expectedFpp() {
+        long set = 0;
+        for (long word : mWords) {
+            set += Long.bitCount(word);
+        }
+        return Math.pow((double) set / mBitSize, mHashCount);
+    }
+
+    public long bitSize() {
+        return mBitSize;
+    }
+
+    public int hashCount() {
+        return mHashCount;
+    }
+
+    /**
+     * @return 本实例put过的元素数量，从文件读取的过滤器为0
+     */
+    public long count() {
+        return mCount;
+    }
+
+    //----------------------- serialize -----------------------
+
+    public boolean writeTo(String path) {
+        return writeTo(new File(path));
+    }
+
+    /**
+     * 格式：magic(int) hashCount(int) bitSize(long) words(long[])，大端
+     *
+     * @return 写入失败，或者超过2GB、放不进一个字节数组时返回false
+     */
+    public boolean writeTo(File file) {
+        long size = HEADER_SIZE + mWords.length * 8L;
+        if (size > Integer.MAX_VALUE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(mHashCount);
+        buffer.putLong(mBitSize);
+        buffer.asLongBuffer().put(mWords);
+        return FileIOUtils.writeFileFromBytesByStream(file, buffer.array());
+    }
+
+    public static <T> BloomFilter<T> readFrom(String path) {
+        return readFrom(new File(path), null);
+    }
+
+    public static <T> BloomFilter<T> readFrom(File file) {
+        return readFrom(file, null);
+    }
+
+    /**
+     * @param hasher 必须和写入时使用的hasher一致
+     * @return 文件不存在或格式不对时返回null
+     */
+    public static <T> BloomFilter<T> readFrom(File file, Hasher<? super T> hasher) {
+        byte[] bytes = FileIOUtils.readFile2BytesByChannel(file);
+        if (bytes == null || bytes.length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC) {
+            return null;
+        }
+        int hashCount = buffer.getInt();
+        long bitSize = buffer.getLong();
+        if (hashCount <= 0 || bitSize <= 0 || bitSize % Long.SIZE != 0
+                || bitSize / 8 != bytes.length - HEADER_SIZE) {
+            return null;
+        }
+        long[] words = new long[(int) (bitSize / Long.SIZE)];
+        buffer.asLongBuffer().get(words);
+        return new BloomFilter<T>(words, hashCount, hasher);
+    }
+
+    //----------------------- hash -----------------------
+
+    public interface Hasher<T> {
+        long hash(T it);
+    }
+
+    private static final Hasher<Object> DEFAULT_HASHER = new Hasher<Object>() {
+        @Override
+        public long hash(Object it) {
+            if (it instanceof CharSequence) {
+                // FNV-1a 64，String.hashCode只有32位，上千万元素时冲突会抬高误判率
+                CharSequence chars = (CharSequence) it;
+                long hash = 0xcbf29ce484222325L;
+                for (int i = 0, len = chars.length(); i < len; i++) {
+                    hash = (hash ^ chars.charAt(i)) * 0x100000001b3L;
+                }
+                return mix(hash);
+            } else if (it instanceof Long) {
+                return mix((Long) it);
+            } else {
+                return mix(it.hashCode());
+            }
+        }
+    };
+
+    private static long secondHash(long hash) {
+        return mix(hash ^ 0x9E3779B97F4A7C15L) | 1L;
+    }
+
+    /**
+     * murmur3 fmix64
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,199 @@
+package lamer.groovy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * {@link GroovyFile#grepFiles(File, String, java.util.concurrent.Executor, int, GroovyFile.FileMatch)}的实现
+ * <p>
+ * 用Boyer-Moore-Horspool直接在映射的字节上查找UTF-8编码的关键字，不把文件解码成String；
+ * 只有命中时才去数行号、解码所在的那一行，都在已经映射的窗口上完成，没有命中的文件只有一次查找的开销。
+ */
+final class ContentSearch {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAP_WINDOW = 16 << 20;
+    /**
+     * 命中所在行向前、向后最多解码的字节数，避免没有换行的大文件被整个解码
+     */
+    private static final int MAX_LINE_BYTES = 4096;
+
+    private final byte[] mPattern;
+    private final int[] mShift = new int[256];
+
+    ContentSearch(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("token must not be empty");
+        }
+        mPattern = token.getBytes(UTF_8);
+        final int last = mPattern.length - 1;
+        Arrays.fill(mShift, mPattern.length);
+        for (int i = 0; i < last; i++) {
+            mShift[mPattern[i] & 0xff] = last - i;
+        }
+    }
+
+    /**
+     * @return 命中次数，读取失败时为-1
+     */
+    int search(File file, GroovyFile.FileMatch match) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel fc = raf.getChannel();
+            final long size = fc.size();
+            final int length = mPattern.length;
+            int hits = 0;
+            // 已经数过换行的位置和到这个位置为止的行号，只在命中时向后推进
+            long countedTo = 0;
+            long line = 1;
+            long position = 0;
+            while (position + length <= size) {
+                final long windowEnd = Math.min(size, position + MAP_WINDOW);
+                MappedByteBuffer window = fc.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+                final int limit = (int) (windowEnd - position) - length;
+                int i = 0;
+                while (i <= limit) {
+                    int j = length - 1;
+                    while (j >= 0 && window.get(i + j) == mPattern[j]) {
+                        j--;
+                    }
+                    if (j < 0) {
+                        long offset = position + i;
+                        if (countedTo < position) {
+                            // 上一次命中在之前的窗口里，先补上中间没有映射在当前窗口的部分
+                            line += countLines(fc, countedTo, position);
+                            countedTo = position;
+                        }
+                        line += countLines(window, (int) (countedTo - position), i);
+                        countedTo = offset;
+                        String text = lineAround(window, i, position > 0, windowEnd < size);
+                        if (text == null) {
+                            // 这一行跨过了窗口的边界
+                            text = lineAround(fc, offset, size);
+                        }
+                        match.match(file, offset, line, text);
+                        hits++;
+                        i += length;
+                    } else {
+                        i += mShift[window.get(i + length - 1) & 0xff];
+                    }
+                }
+                if (windowEnd == size) {
+                    break;
+                }
+                // 下一个窗口从第一个还没检查过的位置开始，和上一个窗口重叠不到length个字节
+                position += i;
+            }
+            return hits;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+
+    /**
+     * @return 窗口中[from, to)之间的'\n'数量
+     */
+    private static long countLines(ByteBuffer window, int from, int to) {
+        long lines = 0;
+        for (int i = from; i < to; i++) {
+            if (window.get(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return [from, to)之间的'\n'数量
+     */
+    private static long countLines(FileChannel fc, long from, long to) throws IOException {
+        long lines = 0;
+        long position = from;
+        while (position < to) {
+            long len = Math.min(MAP_WINDOW, to - position);
+            MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, position, len);
+            for (int i = 0; i < len; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            position += len;
+        }
+        return lines;
+    }
+
+    /**
+     * 在已经映射的窗口里解码hit所在的那一行，规则和{@link #lineAround(FileChannel, long, long)}相同
+     *
+     * @param before 窗口前面还有内容
+     * @param after  窗口后面还有内容
+     * @return 这一行在需要保留的范围内跨过了窗口的边界时为null
+     */
+    private static String lineAround(ByteBuffer window, int hit, boolean before, boolean after) {
+        final int from = Math.max(0, hit - MAX_LINE_BYTES);
+        final int to = Math.min(window.limit(), hit + MAX_LINE_BYTES);
+        int start = hit;
+        while (start > from && window.get(start - 1) != '\n') {
+            start--;
+        }
+        if (start == 0 && before && hit < MAX_LINE_BYTES) {
+            return null;
+        }
+        int stop = hit;
+        while (stop < to && window.get(stop) != '\n') {
+            stop++;
+        }
+        if (stop == window.limit() && after && stop - hit < MAX_LINE_BYTES) {
+            return null;
+        }
+        if (stop > start && window.get(stop - 1) == '\r') {
+            stop--;
+        }
+        byte[] bytes = new byte[stop - start];
+        ByteBuffer line = window.duplicate();
+        line.position(start);
+        line.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * 解码offset所在的那一行，不包括换行符；行太长时只保留命中前后{@link #MAX_LINE_BYTES}个字节
+     */
+    private static String lineAround(FileChannel fc, long offset, long size) throws IOException {
+        long from = Math.max(0, offset - MAX_LINE_BYTES);
+        long to = Math.min(size, offset + MAX_LINE_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, from + buffer.position()) <= 0) {
+                break;
+            }
+        }
+        byte[] bytes = buffer.array();
+        final int hit = (int) (offset - from);
+        final int end = buffer.position();
+        int start = hit;
+        while (start > 0 && bytes[start - 1] != '\n') {
+            start--;
+        }
+        int stop = hit;
+        while (stop < end && bytes[stop] != '\n') {
+            stop++;
+        }
+        if (stop > start && bytes[stop - 1] == '\r') {
+            stop--;
+        }
+        return new String(bytes, start, stop - start, UTF_8);
+    }
+}
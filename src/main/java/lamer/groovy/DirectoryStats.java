@@ -0,0 +1,358 @@
+package lamer.groovy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import lamer.groovy.utils.Digest;
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * 统计目录树的总字节数、文件数和可选的内容摘要，每个目录的结果按目录的修改时间缓存，可以持久化
+ * <p>
+ * 目录的修改时间和上次一样时，直接使用缓存中这个目录自己的文件统计和子目录列表，不再listFiles；
+ * 子目录各自独立判断，所以只有发生变化的那几层需要重新扫描。
+ * <pre>
+ *     DirectoryStats stats = DirectoryStats.open(new File(context.getFilesDir(), "cache.stats"), null);
+ *     long bytes = stats.aggregate(context.getCacheDir(), executor, 4).bytes;
+ *     stats.save();
+ * </pre>
+ * 注意：在目录中新建、删除、重命名文件会更新目录的修改时间，但原地改写已有文件的内容不会，
+ * 这种情况下缓存中的大小和摘要会过期，需要{@link #invalidate(File)}或者删掉缓存文件重新统计。
+ */
+public final class DirectoryStats {
+
+    private static final int MAGIC = 0x47445331; // "GDS1"
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mCacheFile;
+    private final Digest.Type mDigestType;
+    private final Map<String, Record> mRecords = new ConcurrentHashMap<>();
+    private final Set<String> mVisited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private DirectoryStats(File cacheFile, Digest.Type digestType) {
+        this.mCacheFile = cacheFile;
+        this.mDigestType = digestType;
+    }
+
+    /**
+     * @param cacheFile  持久化的缓存文件，不存在或格式不对时从头统计；为null时只在内存中缓存
+     * @param digestType 为null时不计算摘要
+     */
+    public static DirectoryStats open(File cacheFile, Digest.Type digestType) {
+        DirectoryStats stats = new DirectoryStats(cacheFile, digestType);
+        if (cacheFile != null && cacheFile.isFile()) {
+            stats.load(FileIOUtils.readFile2BytesByChannel(cacheFile));
+        }
+        return stats;
+    }
+
+    /**
+     * 统计dir下的整棵目录树
+     *
+     * @param executor    为null时在当前线程统计，否则dir的各个子目录树最多maxInFlight个同时统计
+     * @param maxInFlight executor为null时忽略
+     * @return dir不是目录、统计失败或被中断时为null
+     */
+    public Summary aggregate(File dir, Executor executor, int maxInFlight) {
+        if (dir == null || !dir.isDirectory()) {
+            return null;
+        }
+        final File root = dir.getAbsoluteFile();
+        final Record record = recordOf(root);
+        if (record == null) {
+            return null;
+        }
+        final Summary[] children = new Summary[record.subdirs.length];
+        final List<Integer> indices = GroovyArray.range(0, record.subdirs.length);
+        GroovyArray.ArrayEach<Integer> each = index -> {
+            children[index] = aggregateSequential(new File(root, record.subdirs[index]));
+        };
+        if (executor == null || children.length <= 1) {
+            GroovyArray.each(indices, each);
+        } else {
+            try {
+                GroovyArray.eachAsync(indices, executor, maxInFlight, each).get();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return combine(record, children);
+    }
+
+    public Summary aggregate(File dir) {
+        return aggregate(dir, null, 1);
+    }
+
+    /**
+     * 丢弃dir及其子目录的缓存，下次统计时重新扫描
+     */
+    public void invalidate(File dir) {
+        String path = dir.getAbsolutePath();
+        String prefix = path + File.separator;
+        for (String key : mRecords.keySet()) {
+            if (key.equals(path) || key.startsWith(prefix)) {
+                mRecords.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 写入缓存文件，只保存本次打开后统计过的目录，已经不存在的目录会被清理掉
+     */
+    public boolean save() {
+        if (mCacheFile == null) {
+            return false;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(mDigestType == null ? -1 : mDigestType.ordinal());
+            List<Map.Entry<String, Record>> entries = new ArrayList<>();
+            for (Map.Entry<String, Record> entry : mRecords.entrySet()) {
+                if (mVisited.contains(entry.getKey())) {
+                    entries.add(entry);
+                }
+            }
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Record> entry : entries) {
+                Record record = entry.getValue();
+                writeString(out, entry.getKey());
+                out.writeLong(record.mtime);
+                out.writeLong(record.bytes);
+                out.writeInt(record.files);
+                out.writeShort(record.digest == null ? 0 : record.digest.length);
+                if (record.digest != null) {
+                    out.write(record.digest);
+                }
+                out.writeInt(record.subdirs.length);
+                for (String subdir : record.subdirs) {
+                    writeString(out, subdir);
+                }
+            }
+            out.flush();
+            return FileIOUtils.writeFileFromBytesByStream(mCacheFile, bytes.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private Summary aggregateSequential(File dir) {
+        Record record = recordOf(dir);
+        if (record == null) {
+            return null;
+        }
+        Summary[] children = new Summary[record.subdirs.length];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = aggregateSequential(new File(dir, record.subdirs[i]));
+        }
+        return combine(record, children);
+    }
+
+    private Summary combine(Record record, Summary[] children) {
+        long bytes = record.bytes;
+        int files = record.files;
+        int directories = 0;
+        Digest digest = mDigestType == null ? null : Digest.create(mDigestType);
+        if (digest != null && record.digest != null) {
+            digest.update(record.digest, 0, record.digest.length);
+        }
+        for (int i = 0; i < children.length; i++) {
+            Summary child = children[i];
+            if (child == null) {
+                // 统计过程中子目录被删除了
+                continue;
+            }
+            bytes += child.bytes;
+            files += child.files;
+            directories += child.directories + 1;
+            if (digest != null && child.digest != null) {
+                updateName(digest, record.subdirs[i]);
+                digest.update(child.digest, 0, child.digest.length);
+            }
+        }
+        return new Summary(bytes, files, directories, digest == null ? null : digest.finish());
+    }
+
+    /**
+     * @return 目录不存在时为null
+     */
+    private Record recordOf(File dir) {
+        String path = dir.getAbsolutePath();
+        long mtime = dir.lastModified();
+        if (mtime == 0) {
+            mRecords.remove(path);
+            return null;
+        }
+        mVisited.add(path);
+        Record cached = mRecords.get(path);
+        if (cached != null && cached.mtime == mtime) {
+            return cached;
+        }
+        Record record = scan(dir, mtime);
+        mRecords.put(path, record);
+        return record;
+    }
+
+    private Record scan(File dir, long mtime) {
+        File[] list = dir.listFiles();
+        if (list == null) {
+            return new Record(0, 0, 0, null, new String[0]);
+        }
+        // 按名字排序，保证摘要和listFiles的返回顺序无关
+        Arrays.sort(list);
+        long bytes = 0;
+        int files = 0;
+        List<String> subdirs = new ArrayList<>();
+        Digest digest = mDigestType == null ? null : Digest.create(mDigestType);
+        for (File file : list) {
+            if (file.isDirectory()) {
+                subdirs.add(file.getName());
+            } else if (file.isFile()) {
+                bytes += file.length();
+                files++;
+                if (digest != null) {
+                    byte[] content = FileIOUtils.digest(file, mDigestType);
+                    if (content != null) {
+                        updateName(digest, file.getName());
+                        digest.update(content, 0, content.length);
+                    }
+                }
+            }
+        }
+        return new Record(mtime, bytes, files, digest == null ? null : digest.finish(),
+                subdirs.toArray(new String[0]));
+    }
+
+    private void load(byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int type = in.readByte();
+            if (type != (mDigestType == null ? -1 : mDigestType.ordinal())) {
+                // 摘要类型变了，旧的缓存不能用
+                return;
+            }
+            int count = in.readInt();
+            Map<String, Record> records = new ConcurrentHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                long mtime = in.readLong();
+                long size = in.readLong();
+                int files = in.readInt();
+                byte[] digest = null;
+                int digestLength = in.readUnsignedShort();
+                if (digestLength > 0) {
+                    digest = new byte[digestLength];
+                    in.readFully(digest);
+                }
+                String[] subdirs = new String[in.readInt()];
+                for (int j = 0; j < subdirs.length; j++) {
+                    subdirs[j] = readString(in);
+                }
+                records.put(path, new Record(mtime, size, files, digest, subdirs));
+            }
+            mRecords.putAll(records);
+        } catch (IOException | RuntimeException e) {
+            // 文件损坏时当作没有缓存
+            e.printStackTrace();
+        }
+    }
+
+    private static void updateName(Digest digest, String name) {
+        byte[] bytes = name.getBytes(UTF_8);
+        digest.update(bytes, 0, bytes.length);
+        digest.update(new byte[1], 0, 1);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * 一个目录自己的统计，不包括子目录
+     */
+    private static final class Record {
+        final long mtime;
+        final long bytes;
+        final int files;
+        final byte[] digest;
+        final String[] subdirs;
+
+        Record(long mtime, long bytes, int files, byte[] digest, String[] subdirs) {
+            this.mtime = mtime;
+            this.bytes = bytes;
+            this.files = files;
+            this.digest = digest;
+            this.subdirs = subdirs;
+        }
+    }
+
+    public static final class Summary {
+        /**
+         * 所有文件的总字节数
+         */
+        public final long bytes;
+        /**
+         * 文件数，不包括目录
+         */
+        public final int files;
+        /**
+         * 子目录数，不包括自身
+         */
+        public final int directories;
+        /**
+         * 按文件名和内容计算的目录树摘要，没有指定摘要类型时为null
+         */
+        public final byte[] digest;
+
+        Summary(long bytes, int files, int directories, byte[] digest) {
+            this.bytes = bytes;
+            this.files = files;
+            this.directories = directories;
+            this.digest = digest;
+        }
+
+        public String hex() {
+            return Digest.toHex(digest);
+        }
+
+        @Override
+        public String toString() {
+            return "bytes=" + bytes + " files=" + files + " directories=" + directories
+                    + (digest == null ? "" : " digest=" + hex());
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package lamer.groovy;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * 对比内存大得多的文本文件按行排序、去重
+ * <pre>
+ *     long lines = new ExternalSort.Builder()
+ *             .key(line -> line.substring(0, line.indexOf(',')))
+ *             .unique(true)
+ *             .memoryBudget(32 << 20)
+ *             .build()
+ *             .sort(src, dest);
+ * </pre>
+ * 先按内存预算分段读入、排序后写成临时文件，再用一个小顶堆把所有临时文件归并成结果；
+ * 临时文件超过{@link #MAX_FAN_IN}个时先归并成更少的几个，避免同时打开太多文件。
+ * 整个文件放得进预算时不会写临时文件。
+ * <p>
+ * 行的划分和{@link java.io.BufferedReader#readLine()}一致，结果每行以'\n'结尾，只支持UTF-8。
+ * 排序是稳定的；去重时比较结果为0的行只保留最先出现的一行。
+ */
+public final class ExternalSort {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 一次归并最多同时打开的临时文件数
+     */
+    static final int MAX_FAN_IN = 64;
+    private static final int IO_BUFFER = 64 << 10;
+
+    private final Comparator<? super String> mComparator;
+    private final boolean mUnique;
+    private final long mMemoryBudget;
+    private final File mTempDir;
+
+    private ExternalSort(Builder builder) {
+        this.mComparator = builder.comparator;
+        this.mUnique = builder.unique;
+        this.mMemoryBudget = builder.memoryBudget;
+        this.mTempDir = builder.tempDir;
+    }
+
+    /**
+     * 排序src写到dest，先写到dest所在目录的临时文件里再替换，src和dest可以是同一个文件
+     *
+     * @return 写入的行数，失败返回-1
+     */
+    public long sort(File src, File dest) {
+        if (!GroovyFile.isExists(src) || dest == null) {
+            return -1;
+        }
+        File destDir = dest.getAbsoluteFile().getParentFile();
+        File tempDir = mTempDir != null ? mTempDir : destDir;
+        if (!(tempDir.isDirectory() || tempDir.mkdirs()) || !(destDir.isDirectory() || destDir.mkdirs())) {
+            return -1;
+        }
+        List<File> runs = new ArrayList<>();
+        File output = null;
+        try {
+            output = File.createTempFile("sort", ".out", destDir);
+            long lines = spillRuns(src, tempDir, runs, output);
+            if (lines < 0) {
+                // 一段就放下了，已经直接写到output
+                lines = -lines - 1;
+            } else {
+                while (runs.size() > MAX_FAN_IN) {
+                    runs = mergePass(runs, tempDir);
+                }
+                lines = merge(runs, output);
+            }
+            if (!FileIOUtils.moveFile(output, dest)) {
+                return -1;
+            }
+            return lines;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            if (output != null) {
+                output.delete();
+            }
+        }
+    }
+
+    public long sort(String srcPath, String destPath) {
+        if (srcPath == null || destPath == null) {
+            return -1;
+        }
+        return sort(new File(srcPath), new File(destPath));
+    }
+
+    /**
+     * 按内存预算把src切成排好序的临时文件
+     *
+     * @return 临时文件中的总行数；src一段就放下时不写临时文件，直接写到output，返回-(行数 + 1)
+     */
+    private long spillRuns(File src, File tempDir, List<File> runs, File output) throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(src), UTF_8), IO_BUFFER);
+            List<String> chunk = new ArrayList<>();
+            long chunkBytes = 0;
+            long total = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(line);
+                chunkBytes += estimate(line);
+                if (chunkBytes >= mMemoryBudget) {
+                    File run = File.createTempFile("sort", ".run", tempDir);
+                    runs.add(run);
+                    total += writeSorted(chunk, run);
+                    chunk.clear();
+                    chunkBytes = 0;
+                }
+            }
+            if (runs.isEmpty()) {
+                return -writeSorted(chunk, output) - 1;
+            }
+            if (!chunk.isEmpty()) {
+                File run = File.createTempFile("sort", ".run", tempDir);
+                runs.add(run);
+                total += writeSorted(chunk, run);
+            }
+            return total;
+        } finally {
+            FileIOUtils.closeIO(reader);
+        }
+    }
+
+    /**
+     * @return 写入的行数
+     */
+    private long writeSorted(List<String> chunk, File file) throws IOException {
+        Collections.sort(chunk, mComparator);
+        Writer writer = null;
+        try {
+            writer = newWriter(file);
+            long lines = 0;
+            String last = null;
+            for (String line : chunk) {
+                if (mUnique && last != null && mComparator.compare(last, line) == 0) {
+                    continue;
+                }
+                writer.write(line);
+                writer.write('\n');
+                last = line;
+                lines++;
+            }
+            writer.flush();
+            return lines;
+        } finally {
+            FileIOUtils.closeIO(writer);
+        }
+    }
+
+    /**
+     * 每MAX_FAN_IN个临时文件归并成一个
+     */
+    private List<File> mergePass(List<File> runs, File tempDir) throws IOException {
+        List<File> merged = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+                File run = File.createTempFile("sort", ".run", tempDir);
+                merged.add(run);
+                merge(group, run);
+                for (File file : group) {
+                    file.delete();
+                }
+            }
+        } catch (IOException e) {
+            for (File file : merged) {
+                file.delete();
+            }
+            throw e;
+        }
+        return merged;
+    }
+
+    /**
+     * k路归并，同样大小的行按临时文件的顺序输出，保证稳定
+     *
+     * @return 写入的行数
+     */
+    private long merge(List<File> runs, File output) throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>(Math.max(runs.size(), 1), new Comparator<Run>() {
+            @Override
+            public int compare(Run a, Run b) {
+                int result = mComparator.compare(a.line, b.line);
+                return result != 0 ? result : a.index - b.index;
+            }
+        });
+        Writer writer = null;
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(runs.get(i), i);
+                if (run.next()) {
+                    heap.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            writer = newWriter(output);
+            long lines = 0;
+            String last = null;
+            while (!heap.isEmpty()) {
+                Run run = heap.poll();
+                String line = run.line;
+                if (!mUnique || last == null || mComparator.compare(last, line) != 0) {
+                    writer.write(line);
+                    writer.write('\n');
+                    last = line;
+                    lines++;
+                }
+                if (run.next()) {
+                    heap.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            writer.flush();
+            return lines;
+        } finally {
+            for (Run run : heap) {
+                run.close();
+            }
+            FileIOUtils.closeIO(writer);
+        }
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8), IO_BUFFER);
+    }
+
+    /**
+     * 一行在堆上大约占用的字节数：String和char[]的对象头、List中的引用，加上字符
+     */
+    private static long estimate(String line) {
+        return 64 + 2L * line.length();
+    }
+
+    private static final class Run implements Closeable {
+        final BufferedReader reader;
+        final int index;
+        String line;
+
+        Run(File file, int index) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8), IO_BUFFER);
+            this.index = index;
+        }
+
+        boolean next() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+
+        @Override
+        public void close() {
+            FileIOUtils.closeIO(reader);
+        }
+    }
+
+    public static class Builder {
+        private Comparator<? super String> comparator = NATURAL;
+        private boolean unique;
+        private long memoryBudget = 16 << 20;
+        private File tempDir;
+
+        /**
+         * 默认按String的自然顺序
+         */
+        public Builder comparator(Comparator<? super String> comparator) {
+            this.comparator = comparator == null ? NATURAL : comparator;
+            return this;
+        }
+
+        /**
+         * 按从每行提取出的key排序，每次比较都会重新提取，提取应该足够轻量
+         */
+        public <K extends Comparable<? super K>> Builder key(final GroovyArray.ArrayCollectTransform<String, K> key) {
+            return comparator(new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return key.transform(a).compareTo(key.transform(b));
+                }
+            });
+        }
+
+        /**
+         * 比较结果为0的行只保留最先出现的一行
+         */
+        public Builder unique(boolean unique) {
+            this.unique = unique;
+            return this;
+        }
+
+        /**
+         * 每一段在内存中排序的行最多占用的字节数（估算），默认16MB；越大临时文件越少
+         */
+        public Builder memoryBudget(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("memory budget must be positive: " + bytes);
+            }
+            this.memoryBudget = bytes;
+            return this;
+        }
+
+        /**
+         * @param tempDir 临时文件所在的目录，为null时使用dest所在的目录
+         */
+        public Builder tempDir(File tempDir) {
+            this.tempDir = tempDir;
+            return this;
+        }
+
+        public ExternalSort build() {
+            return new ExternalSort(this);
+        }
+    }
+
+    private static final Comparator<String> NATURAL = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            return a.compareTo(b);
+        }
+    };
+}
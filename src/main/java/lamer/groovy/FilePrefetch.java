@@ -0,0 +1,208 @@
+package lamer.groovy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * 启动时在后台并发预读一批文件，之后第一次用{@link GroovyFile}读取同一路径时直接命中内存
+ * <pre>
+ *     FilePrefetch prefetch = new FilePrefetch.Builder()
+ *             .add(configPath, 10)
+ *             .add(templatePath, 5)
+ *             .add(modelPath, 1, FilePrefetch.Mode.READ_AHEAD)
+ *             .start();
+ *     ...
+ *     new GroovyFile(configPath).text(); // 已经在内存里
+ * </pre>
+ * 按优先级从高到低开始读取，同时最多读取{@link Builder#parallelism(int)}个文件。
+ * <ul>
+ * <li>{@link Mode#CACHE}：读入并解码，放进{@link GroovyFile}的共享缓存。第一个读取该路径的GroovyFile会接管这份内容，
+ * 接管前检查文件的长度和修改时间，文件在预读后被修改过时重新读取。还没读完时读取同一路径会等它读完，不会重复读取；
+ * 共享缓存中还没有被接管的内容（字节和解码后的文本一起算）最多占用32MB，超过时丢弃最久没有用到的</li>
+ * <li>{@link Mode#READ_AHEAD}：只用{@link java.nio.MappedByteBuffer#load()}把文件读进系统的页缓存，不占用Java堆，
+ * 适合很大或者不经过GroovyFile读取的文件。Java中没有madvise，load()会逐页访问，效果相当于MADV_WILLNEED</li>
+ * </ul>
+ */
+public final class FilePrefetch {
+
+    public enum Mode {
+        CACHE,
+        READ_AHEAD
+    }
+
+    private final ArrayFuture<Void> mFuture;
+
+    private FilePrefetch(ArrayFuture<Void> future) {
+        this.mFuture = future;
+    }
+
+    /**
+     * 等待所有文件读取完成
+     *
+     * @return 超时返回false
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            mFuture.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // 单个文件读取失败不会抛出，这里只会是回调外的异常
+            e.printStackTrace();
+            return true;
+        } catch (CancellationException e) {
+            return true;
+        }
+    }
+
+    public boolean isDone() {
+        return mFuture.isDone();
+    }
+
+    /**
+     * 停止读取还没开始的文件
+     */
+    public void cancel() {
+        mFuture.cancel(false);
+    }
+
+    /**
+     * @return path的内容是否已经预读进共享缓存、还没有被GroovyFile接管
+     */
+    public static boolean isCached(String path) {
+        return GroovyFile.isPrefetched(path);
+    }
+
+    /**
+     * 丢弃共享缓存中还没有被接管的内容
+     */
+    public static void clear() {
+        GroovyFile.clearPrefetched();
+    }
+
+    private static boolean readAhead(String path) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(path, "r");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long len = Math.min(Integer.MAX_VALUE, size - position);
+                channel.map(FileChannel.MapMode.READ_ONLY, position, len).load();
+                position += len;
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final String path;
+        final int priority;
+        final Mode mode;
+
+        Entry(String path, int priority, Mode mode) {
+            this.path = path;
+            this.priority = priority;
+            this.mode = mode;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return o.priority < priority ? -1 : (o.priority == priority ? 0 : 1);
+        }
+    }
+
+    public static class Builder {
+        private final List<Entry> entries = new ArrayList<>();
+        private Executor executor;
+        private int parallelism = 3;
+
+        public Builder add(String path, int priority) {
+            return add(path, priority, Mode.CACHE);
+        }
+
+        /**
+         * @param priority 越大越先读取
+         */
+        public Builder add(String path, int priority, Mode mode) {
+            if (path != null) {
+                entries.add(new Entry(path, priority, mode == null ? Mode.CACHE : mode));
+            }
+            return this;
+        }
+
+        /**
+         * @param executor 为null时使用内部的守护线程，读完后自动结束
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 同时读取的文件数，默认3
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public FilePrefetch start() {
+            List<Entry> sorted = new ArrayList<>(entries);
+            // 稳定排序，优先级相同时保持添加顺序
+            Collections.sort(sorted);
+            ExecutorService owned = null;
+            Executor target = executor;
+            if (target == null) {
+                owned = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(sorted.size(), 1)), DAEMON);
+                target = owned;
+            }
+            ArrayFuture<Void> future = GroovyArray.eachAsync(sorted, target, parallelism, entry -> {
+                if (entry.mode == Mode.READ_AHEAD) {
+                    readAhead(entry.path);
+                } else {
+                    GroovyFile.prefetch(entry.path);
+                }
+            });
+            if (owned != null) {
+                // 已经提交的worker会执行完，之后线程退出
+                owned.shutdown();
+            }
+            return new FilePrefetch(future);
+        }
+    }
+
+    private static final ThreadFactory DAEMON = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FilePrefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+}
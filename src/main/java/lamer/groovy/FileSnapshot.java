@@ -0,0 +1,343 @@
+package lamer.groovy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * 目录树的快照，记录每个文件和目录的相对路径、大小和修改时间
+ * <p>
+ * {@link #diff(File, FileSnapshot, boolean)}和上一次的快照比较，只返回新增、修改、删除的路径。
+ * 目录的修改时间没变时，不再listFiles，直接沿用上次记录的子项：
+ * <ul>
+ * <li>trustDirectoryMtime为false时，仍然逐个检查上次记录的文件的大小和修改时间，能发现原地改写的文件，
+ * 开销和文件数成正比，但省掉了所有目录的listFiles</li>
+ * <li>trustDirectoryMtime为true时，连文件也不检查，开销只和目录数成正比；
+ * 原地改写文件不会更新目录的修改时间，这种修改会被漏掉</li>
+ * </ul>
+ * 路径以'/'分隔，根目录自身不记录。
+ */
+public final class FileSnapshot {
+
+    private static final int MAGIC = 0x47465331; // "GFS1"
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ROOT = "";
+
+    private final TreeMap<String, Entry> mEntries;
+    /**
+     * 根目录的修改时间
+     */
+    private final long mRootMtime;
+
+    private FileSnapshot(TreeMap<String, Entry> entries, long rootMtime) {
+        this.mEntries = entries;
+        this.mRootMtime = rootMtime;
+    }
+
+    public static FileSnapshot empty() {
+        return new FileSnapshot(new TreeMap<String, Entry>(), 0);
+    }
+
+    /**
+     * 完整遍历一次root
+     */
+    public static FileSnapshot take(File root) {
+        return diff(root, null, false).snapshot;
+    }
+
+    /**
+     * @param previous 上一次的快照，为null时所有路径都是新增
+     * @return root不是目录时，上一次的所有路径都是删除
+     */
+    public static Diff diff(File root, FileSnapshot previous, boolean trustDirectoryMtime) {
+        if (previous == null) {
+            previous = empty();
+        }
+        Walker walker = new Walker(previous, trustDirectoryMtime);
+        long rootMtime = 0;
+        if (root != null && root.isDirectory()) {
+            rootMtime = root.lastModified();
+            walker.visit(ROOT, root, previous.mRootMtime == rootMtime);
+        } else {
+            walker.deleteChildren(ROOT);
+        }
+        return new Diff(new FileSnapshot(walker.entries, rootMtime), walker.added, walker.modified, walker.deleted);
+    }
+
+    /**
+     * @return 没有记录时为null
+     */
+    public Entry get(String path) {
+        return mEntries.get(path);
+    }
+
+    /**
+     * @return 所有路径，按字典序
+     */
+    public List<String> paths() {
+        return new ArrayList<>(mEntries.keySet());
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    //----------------------- serialize -----------------------
+
+    /**
+     * 格式：magic(int) rootMtime(long) count(int)，每项为 path长度(short) path(UTF-8) directory(byte) size(long) mtime(long)
+     */
+    public boolean writeTo(File file) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + mEntries.size() * 48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeLong(mRootMtime);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                byte[] path = entry.getKey().getBytes(UTF_8);
+                out.writeShort(path.length);
+                out.write(path);
+                Entry value = entry.getValue();
+                out.writeByte(value.directory ? 1 : 0);
+                out.writeLong(value.size);
+                out.writeLong(value.mtime);
+            }
+            out.flush();
+            return FileIOUtils.writeFileFromBytesByStream(file, bytes.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return 文件不存在或格式不对时返回null
+     */
+    public static FileSnapshot readFrom(File file) {
+        byte[] bytes = FileIOUtils.readFile2BytesByChannel(file);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            long rootMtime = in.readLong();
+            int count = in.readInt();
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                byte[] path = new byte[in.readUnsignedShort()];
+                in.readFully(path);
+                boolean directory = in.readByte() != 0;
+                long size = in.readLong();
+                long mtime = in.readLong();
+                entries.put(new String(path, UTF_8), new Entry(directory, size, mtime));
+            }
+            return new FileSnapshot(entries, rootMtime);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    //----------------------- walk -----------------------
+
+    private static final class Walker {
+        final FileSnapshot previous;
+        final boolean trustDirectoryMtime;
+        final Map<String, List<String>> children;
+        final TreeMap<String, Entry> entries = new TreeMap<>();
+        final List<String> added = new ArrayList<>();
+        final List<String> modified = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+
+        Walker(FileSnapshot previous, boolean trustDirectoryMtime) {
+            this.previous = previous;
+            this.trustDirectoryMtime = trustDirectoryMtime;
+            this.children = new HashMap<>();
+            for (String path : previous.mEntries.keySet()) {
+                int slash = path.lastIndexOf('/');
+                String parent = slash < 0 ? ROOT : path.substring(0, slash);
+                List<String> names = children.get(parent);
+                if (names == null) {
+                    names = new ArrayList<>();
+                    children.put(parent, names);
+                }
+                names.add(path.substring(slash + 1));
+            }
+        }
+
+        /**
+         * @param unchanged 目录修改时间和上次一样
+         */
+        void visit(String path, File dir, boolean unchanged) {
+            List<String> known = children.get(path);
+            if (unchanged) {
+                if (known == null) {
+                    return;
+                }
+                for (String name : known) {
+                    String childPath = child(path, name);
+                    Entry before = previous.mEntries.get(childPath);
+                    File file = new File(dir, name);
+                    if (before.directory) {
+                        visitDirectory(childPath, file, before);
+                    } else if (trustDirectoryMtime) {
+                        entries.put(childPath, before);
+                    } else {
+                        visitFile(childPath, file, before);
+                    }
+                }
+                return;
+            }
+
+            String[] names = dir.list();
+            if (names == null) {
+                names = new String[0];
+            }
+            for (String name : names) {
+                String childPath = child(path, name);
+                File file = new File(dir, name);
+                Entry before = previous.mEntries.get(childPath);
+                if (file.isDirectory()) {
+                    if (before != null && !before.directory) {
+                        // 文件变成了同名目录
+                        deleted.add(childPath);
+                        before = null;
+                    }
+                    visitDirectory(childPath, file, before);
+                } else {
+                    if (before != null && before.directory) {
+                        deleteChildren(childPath);
+                        deleted.add(childPath);
+                        before = null;
+                    }
+                    visitFile(childPath, file, before);
+                }
+            }
+            if (known != null) {
+                List<String> present = new ArrayList<>(names.length);
+                Collections.addAll(present, names);
+                Collections.sort(present);
+                for (String name : known) {
+                    if (Collections.binarySearch(present, name) < 0) {
+                        String childPath = child(path, name);
+                        if (previous.mEntries.get(childPath).directory) {
+                            deleteChildren(childPath);
+                        }
+                        deleted.add(childPath);
+                    }
+                }
+            }
+        }
+
+        void visitDirectory(String path, File dir, Entry before) {
+            long mtime = dir.lastModified();
+            if (mtime == 0) {
+                // 遍历过程中被删除了
+                if (before != null) {
+                    deleteChildren(path);
+                    deleted.add(path);
+                }
+                return;
+            }
+            entries.put(path, new Entry(true, 0, mtime));
+            if (before == null) {
+                added.add(path);
+            }
+            visit(path, dir, before != null && before.mtime == mtime);
+        }
+
+        void visitFile(String path, File file, Entry before) {
+            long mtime = file.lastModified();
+            if (mtime == 0) {
+                if (before != null) {
+                    deleted.add(path);
+                }
+                return;
+            }
+            long size = file.length();
+            Entry after = new Entry(false, size, mtime);
+            entries.put(path, after);
+            if (before == null) {
+                added.add(path);
+            } else if (before.size != size || before.mtime != mtime) {
+                modified.add(path);
+            }
+        }
+
+        void deleteChildren(String path) {
+            List<String> known = children.get(path);
+            if (known == null) {
+                return;
+            }
+            for (String name : known) {
+                String childPath = child(path, name);
+                if (previous.mEntries.get(childPath).directory) {
+                    deleteChildren(childPath);
+                }
+                deleted.add(childPath);
+            }
+        }
+
+        private static String child(String parent, String name) {
+            return parent.isEmpty() ? name : parent + '/' + name;
+        }
+    }
+
+    public enum Change {
+        ADDED,
+        MODIFIED,
+        DELETED
+    }
+
+    public static final class Entry {
+        public final boolean directory;
+        /**
+         * 目录为0
+         */
+        public final long size;
+        public final long mtime;
+
+        Entry(boolean directory, long size, long mtime) {
+            this.directory = directory;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    public static final class Diff {
+        /**
+         * 这次遍历后的快照，用于下一次比较
+         */
+        public final FileSnapshot snapshot;
+        public final List<String> added;
+        public final List<String> modified;
+        public final List<String> deleted;
+
+        Diff(FileSnapshot snapshot, List<String> added, List<String> modified, List<String> deleted) {
+            this.snapshot = snapshot;
+            this.added = Collections.unmodifiableList(added);
+            this.modified = Collections.unmodifiableList(modified);
+            this.deleted = Collections.unmodifiableList(deleted);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package lamer.groovy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import lamer.groovy.utils.FileIOUtils;
+import lamer.groovy.utils.FileWatcher;
+
+/**
+ * 跟踪一个不断追加的文件（tail -F），每次{@link #poll()}只读上次读到的位置之后的新字节，按行回调
+ * <pre>
+ *     FileTail tail = new GroovyFile(logPath).follow(line -> ...);
+ *     tail.watch(watcher); // 或者定时调用tail.poll()
+ *     ...
+ *     tail.close();
+ * </pre>
+ * 开销只和新增的字节数有关，和文件大小无关。没有换行结尾的最后一行会留到下次补全后再回调，
+ * 需要立即拿到时调用{@link #flush()}。
+ * <ul>
+ * <li>截断：打开的文件比已读的位置短时，从头重新读</li>
+ * <li>轮转：路径指向了另一个文件（文件开头的字节不同，或者比已读的位置短）时，先读完旧文件剩下的内容，再从头读新文件。
+ * 只有路径的长度和打开的文件不同时才去比较开头的字节；开头{@value #HEAD_SIZE}个字节完全相同、又不比已读位置短的新文件认不出来</li>
+ * </ul>
+ * 只支持UTF-8，'\n'和"\r\n"都是换行。回调抛出的RuntimeException只打印出来，不影响后面的行。
+ */
+public final class FileTail implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 << 10;
+    /**
+     * 用来判断路径是否换成了另一个文件的开头字节数
+     */
+    private static final int HEAD_SIZE = 64;
+
+    private final File mFile;
+    private final GroovyArray.ArrayEach<String> mEach;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean mFromEnd;
+
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+    /**
+     * 下一次从mChannel读取的位置
+     */
+    private long mReadPosition;
+    private byte[] mHead = new byte[0];
+    /**
+     * 还没有遇到换行的半行
+     */
+    private byte[] mPending = new byte[256];
+    private int mPendingLength;
+    private Closeable mWatch;
+    private boolean mClosed;
+    /**
+     * 上次读取失败关掉了mChannel，重新打开后接着mReadPosition读
+     */
+    private boolean mResume;
+
+    /**
+     * @param fromEnd 为true时跳过第一次poll时已有的内容，只回调之后追加的行
+     */
+    FileTail(File file, boolean fromEnd, GroovyArray.ArrayEach<String> each) {
+        this.mFile = file;
+        this.mFromEnd = fromEnd;
+        this.mEach = each;
+    }
+
+    /**
+     * 读取新增的内容并回调其中完整的行
+     *
+     * @return 回调的行数，文件不存在时为0，读取失败时为-1
+     */
+    public synchronized int poll() {
+        if (mClosed) {
+            return 0;
+        }
+        try {
+            int lines = 0;
+            if (mChannel == null) {
+                boolean opened;
+                if (mResume) {
+                    opened = openChannel();
+                    if (opened) {
+                        mResume = false;
+                        if (isHeadChanged(readHead(mChannel))) {
+                            // 关闭期间路径换成了另一个文件，旧文件剩下的内容已经读不到了
+                            lines += flushPending();
+                            mReadPosition = 0;
+                            mHead = readHead(mChannel);
+                        }
+                    }
+                } else {
+                    opened = open(mFromEnd);
+                    // 第一次poll时还不存在的文件是新建的，要从头读
+                    mFromEnd = false;
+                }
+                if (!opened) {
+                    return lines;
+                }
+            }
+            if (mChannel.size() < mReadPosition) {
+                // 原地截断，同一个文件从头再读
+                mReadPosition = 0;
+                mPendingLength = 0;
+                mHead = new byte[0];
+            }
+            lines += drain();
+            // 路径的长度和打开的文件一样时多半还是同一个文件，省掉一次打开
+            if (mFile.length() != mChannel.size() && isRotated()) {
+                // 旧文件已经读完，剩下的半行不会再补全了
+                lines += flushPending();
+                closeChannel();
+                if (open(false)) {
+                    lines += drain();
+                }
+            }
+            return lines;
+        } catch (IOException e) {
+            e.printStackTrace();
+            // 保留读到的位置和半行，下次poll重新打开后接着读，不会重复回调
+            closeChannel();
+            mResume = true;
+            return -1;
+        }
+    }
+
+    /**
+     * 文件变化时自动{@link #poll()}，回调在监听线程上执行
+     *
+     * @return 监听失败返回false
+     */
+    public synchronized boolean watch(FileWatcher watcher) {
+        FileIOUtils.closeIO(mWatch);
+        mWatch = watcher.watch(mFile, new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        });
+        return mWatch != null;
+    }
+
+    /**
+     * 把还没有换行结尾的最后一行也回调出去
+     *
+     * @return 回调的行数
+     */
+    public synchronized int flush() {
+        return flushPending();
+    }
+
+    /**
+     * @return 已经回调过的内容在当前文件中的结束位置，不包括还没有换行的半行
+     */
+    public synchronized long position() {
+        return mReadPosition - mPendingLength;
+    }
+
+    @Override
+    public synchronized void close() {
+        mClosed = true;
+        FileIOUtils.closeIO(mWatch);
+        mWatch = null;
+        closeChannel();
+    }
+
+    private boolean open(boolean fromEnd) throws IOException {
+        if (!openChannel()) {
+            return false;
+        }
+        mReadPosition = fromEnd ? mChannel.size() : 0;
+        mPendingLength = 0;
+        mHead = readHead(mChannel);
+        return true;
+    }
+
+    /**
+     * 只打开文件，不改变读取的位置
+     */
+    private boolean openChannel() {
+        if (!mFile.isFile()) {
+            return false;
+        }
+        try {
+            mRaf = new RandomAccessFile(mFile, "r");
+        } catch (IOException e) {
+            // 刚好在轮转的间隙里被删除
+            return false;
+        }
+        mChannel = mRaf.getChannel();
+        return true;
+    }
+
+    private void closeChannel() {
+        FileIOUtils.closeIO(mRaf);
+        mRaf = null;
+        mChannel = null;
+    }
+
+    /**
+     * 从mReadPosition读到当前文件末尾
+     */
+    private int drain() throws IOException {
+        int lines = 0;
+        while (true) {
+            mBuffer.clear();
+            int read = mChannel.read(mBuffer, mReadPosition);
+            if (read <= 0) {
+                break;
+            }
+            mReadPosition += read;
+            lines += split(mBuffer.array(), read);
+        }
+        if (mHead.length < HEAD_SIZE && mReadPosition > mHead.length) {
+            // 打开时文件还很短，开头的字节跟着内容一起补全
+            mHead = readHead(mChannel);
+        }
+        return lines;
+    }
+
+    private int split(byte[] bytes, int length) {
+        int lines = 0;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (mPendingLength > 0) {
+                appendPending(bytes, start, i - start);
+                emit(mPending, 0, mPendingLength);
+                mPendingLength = 0;
+            } else {
+                emit(bytes, start, i - start);
+            }
+            lines++;
+            start = i + 1;
+        }
+        appendPending(bytes, start, length - start);
+        return lines;
+    }
+
+    private void appendPending(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (mPendingLength + length > mPending.length) {
+            mPending = Arrays.copyOf(mPending, Math.max(mPending.length * 2, mPendingLength + length));
+        }
+        System.arraycopy(bytes, offset, mPending, mPendingLength, length);
+        mPendingLength += length;
+    }
+
+    private int flushPending() {
+        if (mPendingLength == 0) {
+            return 0;
+        }
+        emit(mPending, 0, mPendingLength);
+        mPendingLength = 0;
+        return 1;
+    }
+
+    private void emit(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        try {
+            mEach.each(new String(bytes, offset, length, UTF_8));
+        } catch (RuntimeException e) {
+            // mReadPosition已经越过了整块，抛出去的话这块里剩下的行就再也不会回调了
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return 路径现在指向的文件开头和打开的文件不同，或者比已经读到的位置短
+     */
+    private boolean isRotated() throws IOException {
+        if (!mFile.isFile()) {
+            // 旧文件被移走、新文件还没有创建，继续留在旧文件上
+            return false;
+        }
+        if (mFile.length() < mReadPosition) {
+            return true;
+        }
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(mFile, "r");
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            return isHeadChanged(readHead(raf.getChannel()));
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+
+    /**
+     * @return head和已读文件的开头在两者都有的部分上不同
+     */
+    private boolean isHeadChanged(byte[] head) {
+        int compared = Math.min(head.length, mHead.length);
+        for (int i = 0; i < compared; i++) {
+            if (head[i] != mHead[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] readHead(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(HEAD_SIZE, channel.size()));
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) <= 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(head.array(), head.position());
+    }
+}
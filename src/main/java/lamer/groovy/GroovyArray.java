@@ -3,19 +3,29 @@ package lamer.groovy;
 import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Executor;
 
 /**
  * 实现Groovy中对于Array的匕首方法
  * 例如
  * {@link #join(Object[], String)} -> 数组变成String
  * {@link #collect(Object[], ArrayCollectTransform)} -> 数组变成另一个结构的数据的方法
+ * {@link #collectMemo(Object[], ArrayCollectTransform, int)} -> 重复元素只转换一次的collect，见{@link MemoizedTransform}
  * {@link #each(Object[], ArrayEach)} -> 遍历数组
+ * {@link #eachAsync(Object[], Executor, int, ArrayEach)} {@link #collectAsync(Object[], Executor, int, ArrayCollectTransform)} -> 限制并发数的异步each/collect，返回{@link ArrayFuture}
  * {@link #eachReverse(Object[], ArrayEach)} -> 反向遍历数组
  * {@link #find(Object[], ArrayFinder)} -> 从数组中查找
  * {@link #findIndex(Object[], ArrayFinder)} -> 找到索引
+ * {@link #binarySearch(Object[], Comparable, ArrayCollectTransform)} {@link #findSorted(Object[], Comparable, ArrayCollectTransform)} -> 在按key排好序的数组中二分查找
+ * {@link #lowerBound(Object[], Comparable, ArrayCollectTransform)} {@link #upperBound(Object[], Comparable, ArrayCollectTransform)} -> 二分查找上下界
+ * {@link #sortedIndex(Object[], ArrayCollectTransform)} {@link #hashIndex(Object[], ArrayCollectTransform)} -> 建立可以反复查找的{@link ArrayIndex}
  * {@link #grep(Object[], ArrayFilter)} -> 过滤数组
+ * {@link #collate(Object[], int)} {@link #window(Object[], int, int)} {@link #partition(Object[], ArrayFinder)} -> 分段、滑动窗口、按条件分组，返回不复制元素的视图
+ * {@link #eachBatch(Object[], int, ArrayEach)} -> 按批遍历，回调复用同一个{@link ArraySlice}
  * {@link #plus(Object[][])} -> 数组相加
  * {@link #first(Object[])} {@link #last(Object[])} 获得数组第一个和最后一个
  * {@link #isEmpty(Object[])} {@link #count(List)} 数组是否为空以及数组数量
@@ -24,6 +34,7 @@ import java.util.List;
  * {@link #any(Object[], ArrayElementCondition)} -> 如果数组中任一元素满足{@link ArrayElementCondition#condition(int, Object)}，则为true，否则为false.
  * {@link #range(int, int)} 创建一个指定范围内的数据
  * {@link #rangeEach(int, int, ArrayEach)} 创建一个指定范围内的数据，并可迭代实现
+ * {@link #bloom(Object[], double)} 用数组创建{@link BloomFilter}
  *
  */
 public class GroovyArray {
@@ -138,15 +149,21 @@ public class GroovyArray {
             return null;
         }
 
+        final long start = GroovyTrace.begin();
         List<T> array = newList(factory, ds.size());
+        int visited = 0;
+        int terminatedAt = -1;
         for (T data : ds) {
+            visited++;
             if (filter.grep(data)) {
                 array.add(data);
             }
             if (filter.termination(data)) {
+                terminatedAt = visited - 1;
                 break;
             }
         }
+        GroovyTrace.end("grep", start, filter, ds.size(), visited, terminatedAt);
         return array;
     }
 
@@ -161,7 +178,9 @@ public class GroovyArray {
             return null;
         }
 
+        final long start = GroovyTrace.begin();
         List<T> array = newList(factory, ds.size());
+        int terminatedAt = -1;
         for (int i = 0; i < ds.size(); i++) {
             int key = ds.keyAt(i);
             T data = ds.get(key);
@@ -170,9 +189,12 @@ public class GroovyArray {
                 array.add(data);
             }
             if (filter.termination(data)) {
+                terminatedAt = i;
                 break;
             }
         }
+        GroovyTrace.end("grep", start, filter, ds.size(),
+                terminatedAt < 0 ? ds.size() : terminatedAt + 1, terminatedAt);
         return array;
     }
 
@@ -187,15 +209,21 @@ public class GroovyArray {
             return null;
         }
 
+        final long start = GroovyTrace.begin();
         List<T> array = newList(factory, count(ds));
+        int visited = 0;
+        int terminatedAt = -1;
         for (T data : ds) {
+            visited++;
             if (filter.grep(data)) {
                 array.add(data);
             }
             if (filter.termination(data)) {
+                terminatedAt = visited - 1;
                 break;
             }
         }
+        GroovyTrace.end("grep", start, filter, ds.length, visited, terminatedAt);
         return array;
     }
 
@@ -343,6 +371,7 @@ public class GroovyArray {
         if (isEmpty(ds)) {
             return null;
         } else {
+            final long start = GroovyTrace.begin();
             List<R> collects = newList(factory, ds.size());
             for (T data : ds) {
                 R collect = transform.transform(data);
@@ -350,6 +379,7 @@ public class GroovyArray {
                     collects.add(collect);
                 }
             }
+            GroovyTrace.end("collect", start, transform, ds.size(), ds.size(), -1);
             return collects;
         }
     }
@@ -363,13 +393,16 @@ public class GroovyArray {
         if (isEmpty(ds)) {
             return null;
         } else {
-            final List<R> collects = newList(factory, ds.size());
-            each(ds, data -> {
-                R collect = transform.transform(data);
+            final long start = GroovyTrace.begin();
+            final int count = ds.size();
+            final List<R> collects = newList(factory, count);
+            for (int i = 0; i < count; i++) {
+                R collect = transform.transform(ds.get(ds.keyAt(i)));
                 if (collect != null) {
                     collects.add(collect);
                 }
-            });
+            }
+            GroovyTrace.end("collect", start, transform, count, count, -1);
             return collects;
         }
     }
@@ -383,17 +416,70 @@ public class GroovyArray {
         if (isEmpty(ds)) {
             return null;
         } else {
+            final long start = GroovyTrace.begin();
             final List<R> collects = newList(factory, ds.length);
-            each(ds, data -> {
+            for (T data : ds) {
                 R collect = transform.transform(data);
                 if (collect != null) {
                     collects.add(collect);
                 }
-            });
+            }
+            GroovyTrace.end("collect", start, transform, ds.length, ds.length, -1);
             return collects;
         }
     }
 
+    // -------------------- COLLECT-MEMO -----------------------------
+    // 需要跨多次调用复用缓存时，直接把同一个MemoizedTransform传给collect
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    /**
+     * 和{@link #collect(List, ArrayCollectTransform)}一样，但重复的输入只调用一次transform
+     *
+     * @param maxSize 最多缓存的不同输入数量
+     */
+    public static <T, R> List<R> collectMemo(List<T> ds, ArrayCollectTransform<T, R> transform, int maxSize) {
+        return collect(ds, MemoizedTransform.of(transform, maxSize), null);
+    }
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>SparseArray<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T, R> List<R> collectMemo(SparseArray<T> ds, ArrayCollectTransform<T, R> transform, int maxSize) {
+        return collect(ds, MemoizedTransform.of(transform, maxSize), null);
+    }
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T, R> List<R> collectMemo(T[] ds, ArrayCollectTransform<T, R> transform, int maxSize) {
+        return collect(ds, MemoizedTransform.of(transform, maxSize), null);
+    }
+
+    // -------------------- ASYNC -----------------------------
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    /**
+     * 在executor上执行each，同一时刻最多maxInFlight个回调在运行，用于磁盘、IPC这类I/O回调
+     *
+     * @return 全部执行完、第一个回调抛出异常或被取消时结束
+     */
+    public static <T> ArrayFuture<Void> eachAsync(List<T> ds, Executor executor, int maxInFlight, ArrayEach<T> each) {
+        return ArrayFuture.each(ds, executor, maxInFlight, each);
+    }
+
+    /**
+     * 在executor上执行collect，结果保持原顺序
+     */
+    public static <T, R> ArrayFuture<List<R>> collectAsync(List<T> ds, Executor executor, int maxInFlight, ArrayCollectTransform<T, R> transform) {
+        return ArrayFuture.collect(ds, executor, maxInFlight, transform);
+    }
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T> ArrayFuture<Void> eachAsync(T[] ds, Executor executor, int maxInFlight, ArrayEach<T> each) {
+        return ArrayFuture.each(ds == null ? null : Arrays.asList(ds), executor, maxInFlight, each);
+    }
+
+    public static <T, R> ArrayFuture<List<R>> collectAsync(T[] ds, Executor executor, int maxInFlight, ArrayCollectTransform<T, R> transform) {
+        return ArrayFuture.collect(ds == null ? null : Arrays.asList(ds), executor, maxInFlight, transform);
+    }
+
     // -------------------- INJECT -----------------------------
     //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
 
@@ -447,7 +533,12 @@ public class GroovyArray {
             return;
         }
 
-        eachWithIndex(ds, (data, index) -> each.each(data));
+        final long start = GroovyTrace.begin();
+        final int count = ds.size();
+        for (int i = 0; i < count; i++) {
+            each.each(ds.get(i));
+        }
+        GroovyTrace.end("each", start, each, count, count, -1);
     }
 
     public static <T> void eachWithIndex(List<T> ds, ArrayEachWithIndex<T> each) {
@@ -455,10 +546,12 @@ public class GroovyArray {
             return;
         }
 
+        final long start = GroovyTrace.begin();
         final int count = ds.size();
         for (int i = 0; i < count; i++) {
             each.each(ds.get(i), i);
         }
+        GroovyTrace.end("eachWithIndex", start, each, count, count, -1);
     }
 
     public static <T> void eachReverse(List<T> ds, final ArrayEach<T> each) {
@@ -487,7 +580,13 @@ public class GroovyArray {
             return;
         }
 
-        eachWithIndex(ds, (data, index) -> each.each(data));
+        final long start = GroovyTrace.begin();
+        final int count = ds.size();
+        for (int i = 0; i < count; i++) {
+            int key = ds.keyAt(i);
+            each.each(ds.get(key));
+        }
+        GroovyTrace.end("each", start, each, count, count, -1);
     }
 
     public static <T> void eachWithIndex(SparseArray<T> ds, ArrayEachWithIndex<T> each) {
@@ -495,11 +594,13 @@ public class GroovyArray {
             return;
         }
 
+        final long start = GroovyTrace.begin();
         final int count = ds.size();
         for (int i = 0; i < count; i++) {
             int key = ds.keyAt(i);
             each.each(ds.get(key), i);
         }
+        GroovyTrace.end("eachWithIndex", start, each, count, count, -1);
     }
 
     public static <T> void eachReverse(SparseArray<T> ds, final ArrayEach<T> each) {
@@ -534,7 +635,12 @@ public class GroovyArray {
             return;
         }
 
-        eachWithIndex(array, (data, index) -> each.each(data));
+        final long start = GroovyTrace.begin();
+        final int count = array.length;
+        for (int i = 0; i < count; i++) {
+            each.each(array[i]);
+        }
+        GroovyTrace.end("each", start, each, count, count, -1);
     }
 
     public static <T> void eachWithIndex(T[] array, final ArrayEachWithIndex<T> each) {
@@ -542,10 +648,12 @@ public class GroovyArray {
             return;
         }
 
+        final long start = GroovyTrace.begin();
         final int count = array.length;
         for (int i = 0; i < count; i++) {
             each.each(array[i], i);
         }
+        GroovyTrace.end("eachWithIndex", start, each, count, count, -1);
     }
 
     public static <T> void eachReverse(T[] ds, final ArrayEach<T> each) {
@@ -669,6 +777,291 @@ public class GroovyArray {
         return -1;
     }
 
+    // -------------------- BINARY-SEARCH -----------------------------
+    // ds必须已经按transform提取的key升序排列；List应当支持RandomAccess，否则每次get都是线性的
+
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    /**
+     * @return 找到时为索引，否则为 -(插入位置) - 1，和{@link Collections#binarySearch(List, Object)}一致
+     */
+    public static <T, K extends Comparable<? super K>> int binarySearch(List<T> ds, K key, ArrayCollectTransform<T, K> transform) {
+        if (isEmpty(ds)) {
+            return -1;
+        }
+
+        int index = lowerBound(ds, key, transform);
+        if (index < ds.size() && transform.transform(ds.get(index)).compareTo(key) == 0) {
+            return index;
+        }
+        return -index - 1;
+    }
+
+    public static <T, K extends Comparable<? super K>> T findSorted(List<T> ds, K key, ArrayCollectTransform<T, K> transform) {
+        int index = binarySearch(ds, key, transform);
+        return index < 0 ? null : ds.get(index);
+    }
+
+    /**
+     * @return 第一个key不小于给定key的索引，都小于时为size
+     */
+    public static <T, K extends Comparable<? super K>> int lowerBound(List<T> ds, K key, ArrayCollectTransform<T, K> transform) {
+        if (isEmpty(ds)) {
+            return 0;
+        }
+
+        int low = 0;
+        int high = ds.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (transform.transform(ds.get(mid)).compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 第一个key大于给定key的索引，都不大于时为size
+     */
+    public static <T, K extends Comparable<? super K>> int upperBound(List<T> ds, K key, ArrayCollectTransform<T, K> transform) {
+        if (isEmpty(ds)) {
+            return 0;
+        }
+
+        int low = 0;
+        int high = ds.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (transform.transform(ds.get(mid)).compareTo(key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T, K extends Comparable<? super K>> int binarySearch(T[] ds, K key, ArrayCollectTransform<T, K> transform) {
+        if (isEmpty(ds)) {
+            return -1;
+        }
+
+        return binarySearch(Arrays.asList(ds), key, transform);
+    }
+
+    public static <T, K extends Comparable<? super K>> T findSorted(T[] ds, K key, ArrayCollectTransform<T, K> transform) {
+        int index = binarySearch(ds, key, transform);
+        return index < 0 ? null : ds[index];
+    }
+
+    public static <T, K extends Comparable<? super K>> int lowerBound(T[] ds, K key, ArrayCollectTransform<T, K> transform) {
+        if (isEmpty(ds)) {
+            return 0;
+        }
+
+        return lowerBound(Arrays.asList(ds), key, transform);
+    }
+
+    public static <T, K extends Comparable<? super K>> int upperBound(T[] ds, K key, ArrayCollectTransform<T, K> transform) {
+        if (isEmpty(ds)) {
+            return 0;
+        }
+
+        return upperBound(Arrays.asList(ds), key, transform);
+    }
+
+    // -------------------- INDEX -----------------------------
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T, K extends Comparable<? super K>> ArrayIndex.Sorted<T, K> sortedIndex(List<T> ds, ArrayCollectTransform<T, K> transform) {
+        return new ArrayIndex.Sorted<>(ds, transform);
+    }
+
+    public static <T, K> ArrayIndex.Hash<T, K> hashIndex(List<T> ds, ArrayCollectTransform<T, K> transform) {
+        return new ArrayIndex.Hash<>(ds, transform);
+    }
+
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T, K extends Comparable<? super K>> ArrayIndex.Sorted<T, K> sortedIndex(T[] ds, ArrayCollectTransform<T, K> transform) {
+        return new ArrayIndex.Sorted<>(ds == null ? null : Arrays.asList(ds), transform);
+    }
+
+    public static <T, K> ArrayIndex.Hash<T, K> hashIndex(T[] ds, ArrayCollectTransform<T, K> transform) {
+        return new ArrayIndex.Hash<>(ds == null ? null : Arrays.asList(ds), transform);
+    }
+
+    // -------------------- COLLATE-WINDOW -----------------------------
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    /**
+     * 每size个元素分为一段，最后一段可能不足size；返回的是原数据上的视图，不复制元素。
+     * 不支持{@link RandomAccess}的List（如LinkedList）会先复制一份，视图建在副本上
+     */
+    public static <T> List<List<T>> collate(List<T> ds, int size) {
+        ArraySlice.Windows.check(size, size);
+        if (isEmpty(ds)) {
+            return Collections.emptyList();
+        }
+        return ArraySlice.Windows.of(null, randomAccess(ds), size, size, true);
+    }
+
+    /**
+     * 长度为size、每次向后移动step的滑动窗口，不足size的窗口会被丢弃；返回的是原数据上的视图，不复制元素。
+     * 不支持{@link RandomAccess}的List会先复制一份
+     */
+    public static <T> List<List<T>> window(List<T> ds, int size, int step) {
+        ArraySlice.Windows.check(size, step);
+        if (isEmpty(ds)) {
+            return Collections.emptyList();
+        }
+        return ArraySlice.Windows.of(null, randomAccess(ds), size, step, false);
+    }
+
+    /**
+     * 每size个元素回调一次，回调拿到的是同一个被复用的{@link ArraySlice}，不要在回调外持有；
+     * 不支持{@link RandomAccess}的List会先复制一份
+     */
+    public static <T> void eachBatch(List<T> ds, int size, ArrayEach<List<T>> each) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        if (isEmpty(ds)) {
+            return;
+        }
+        final int count = ds.size();
+        ArraySlice<T> slice = ArraySlice.of(randomAccess(ds), 0, 0);
+        for (int i = 0; i < count; i += size) {
+            each.each(slice.reset(i, Math.min(size, count - i)));
+        }
+    }
+
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T> List<List<T>> collate(T[] ds, int size) {
+        ArraySlice.Windows.check(size, size);
+        if (isEmpty(ds)) {
+            return Collections.emptyList();
+        }
+        return ArraySlice.Windows.of(ds, null, size, size, true);
+    }
+
+    public static <T> List<List<T>> window(T[] ds, int size, int step) {
+        ArraySlice.Windows.check(size, step);
+        if (isEmpty(ds)) {
+            return Collections.emptyList();
+        }
+        return ArraySlice.Windows.of(ds, null, size, step, false);
+    }
+
+    public static <T> void eachBatch(T[] ds, int size, ArrayEach<List<T>> each) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        if (isEmpty(ds)) {
+            return;
+        }
+        final int count = ds.length;
+        ArraySlice<T> slice = ArraySlice.of(ds, 0, 0);
+        for (int i = 0; i < count; i += size) {
+            each.each(slice.reset(i, Math.min(size, count - i)));
+        }
+    }
+
+    // -------------------- PARTITION -----------------------------
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    /**
+     * 按finder把元素分成两组，保持原顺序
+     *
+     * @return 第0个为满足条件的元素，第1个为不满足的；两组共用一个int[]索引表，只读原数据不复制元素。
+     * 不支持{@link RandomAccess}的List会先复制一份
+     */
+    public static <T> List<List<T>> partition(List<T> ds, ArrayFinder<T> finder) {
+        if (isEmpty(ds)) {
+            return Arrays.asList(Collections.<T>emptyList(), Collections.<T>emptyList());
+        }
+        return partition(null, randomAccess(ds), ds.size(), finder);
+    }
+
+    /**
+     * 按下标访问的视图在LinkedList这类List上每次get都是线性的，先复制成ArrayList
+     */
+    private static <T> List<T> randomAccess(List<T> ds) {
+        return ds instanceof RandomAccess ? ds : new ArrayList<>(ds);
+    }
+
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T> List<List<T>> partition(T[] ds, ArrayFinder<T> finder) {
+        if (isEmpty(ds)) {
+            return Arrays.asList(Collections.<T>emptyList(), Collections.<T>emptyList());
+        }
+        return partition(ds, null, ds.length, finder);
+    }
+
+    private static <T> List<List<T>> partition(T[] array, List<T> list, int count, ArrayFinder<T> finder) {
+        // 满足条件的从前往后填，不满足的从后往前填
+        int[] indices = new int[count];
+        int head = 0;
+        int tail = count;
+        for (int i = 0; i < count; i++) {
+            T data = array != null ? array[i] : list.get(i);
+            if (finder.find(data)) {
+                indices[head++] = i;
+            } else {
+                indices[--tail] = i;
+            }
+        }
+        List<T> matched = ArraySlice.Indexed.of(array, list, indices, 0, head, false);
+        List<T> rest = ArraySlice.Indexed.of(array, list, indices, head, count, true);
+        return Arrays.asList(matched, rest);
+    }
+
+    // -------------------- BLOOM -----------------------------
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T> BloomFilter<T> bloom(List<T> ds, double fpp) {
+        return bloom(ds, fpp, null);
+    }
+
+    public static <T> BloomFilter<T> bloom(List<T> ds, double fpp, BloomFilter.Hasher<? super T> hasher) {
+        BloomFilter<T> filter = BloomFilter.create(isEmpty(ds) ? 0 : ds.size(), fpp, hasher);
+        filter.putAll(ds);
+        return filter;
+    }
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>SparseArray<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T> BloomFilter<T> bloom(SparseArray<T> ds, double fpp) {
+        return bloom(ds, fpp, null);
+    }
+
+    public static <T> BloomFilter<T> bloom(SparseArray<T> ds, double fpp, BloomFilter.Hasher<? super T> hasher) {
+        final BloomFilter<T> filter = BloomFilter.create(isEmpty(ds) ? 0 : ds.size(), fpp, hasher);
+        each(ds, filter::put);
+        return filter;
+    }
+    //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>T[]<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
+
+    public static <T> BloomFilter<T> bloom(T[] ds, double fpp) {
+        return bloom(ds, fpp, null);
+    }
+
+    public static <T> BloomFilter<T> bloom(T[] ds, double fpp, BloomFilter.Hasher<? super T> hasher) {
+        BloomFilter<T> filter = BloomFilter.create(isEmpty(ds) ? 0 : ds.length, fpp, hasher);
+        if (!isEmpty(ds)) {
+            for (T data : ds) {
+                filter.put(data);
+            }
+        }
+        return filter;
+    }
+
     // -------------------- COUNT-EMPTY -----------------------------
     //↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓>List<↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓↓
     public static int count(List array) {
@@ -2,10 +2,34 @@ package lamer.groovy;
 
 import android.text.TextUtils;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lamer.groovy.utils.FileIOUtils;
+import lamer.groovy.utils.FileWatcher;
 
 /**
  * Created by chaos on 2018/7/26 17:08
@@ -16,11 +40,44 @@ public class GroovyFile {
 
     private static final boolean NOT_USE_CACHED = false;
 
+    /**
+     * upper bound of the heap held by FilePrefetch content not taken over yet, bytes and decoded text together,
+     * the least recently used are dropped first
+     */
+    private static final long MAX_PREFETCHED_BYTES = 32 << 20;
+
+    /**
+     * guarded by itself, in access order for the LRU eviction
+     */
+    private static final LinkedHashMap<String, Prefetch> sPrefetched = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long sPrefetchedBytes;
+
+    private static final AtomicLong sOffHeapBytes = new AtomicLong();
+
+    /**
+     * off heap buffers not collected yet, a collected buffer shows up in the queue
+     */
+    private static final ReferenceQueue<ByteBuffer> sOffHeapQueue = new ReferenceQueue<>();
+    private static final Set<OffHeap> sOffHeap = Collections.synchronizedSet(new HashSet<OffHeap>());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private String mPath;
+    private final Storage mStorage;
     private Cached mCached;
+    private Closeable mWatch;
 
     public GroovyFile(String path) {
+        this(path, Storage.HEAP);
+    }
+
+    /**
+     * @param storage where the cached content lives, see {@link Storage}
+     */
+    public GroovyFile(String path, Storage storage) {
         this.mPath = path;
+        this.mStorage = storage == null ? Storage.HEAP : storage;
     }
 
     public boolean isExists() {
@@ -28,10 +85,14 @@ public class GroovyFile {
     }
 
     public String text(boolean useCached) {
+        Cached cached = getWatchedCache(useCached);
+        if (cached != null) {
+            return cached.text();
+        }
         if (!isExists()) {
             return null;
         } else {
-            return getCacheOrWait(mPath, useCached).text;
+            return getCacheOrWait(mPath, useCached).text();
         }
     }
 
@@ -40,10 +101,14 @@ public class GroovyFile {
     }
 
     public byte[] bytes(boolean useCached) {
+        Cached cached = getWatchedCache(useCached);
+        if (cached != null) {
+            return cached.bytes();
+        }
         if (!isExists()) {
             return null;
         } else {
-            return getCacheOrWait(mPath, useCached).bytes;
+            return getCacheOrWait(mPath, useCached).bytes();
         }
     }
 
@@ -51,14 +116,121 @@ public class GroovyFile {
         return bytes(NOT_USE_CACHED);
     }
 
+    /**
+     * @return read-only view of the cached content, no copy in any {@link Storage}
+     */
+    public ByteBuffer buffer(boolean useCached) {
+        Cached cached = getWatchedCache(useCached);
+        if (cached == null) {
+            if (!isExists()) {
+                return null;
+            }
+            cached = getCacheOrWait(mPath, useCached);
+        }
+        return cached.buffer.duplicate();
+    }
+
+    public ByteBuffer buffer() {
+        return buffer(NOT_USE_CACHED);
+    }
+
+    /**
+     * decode the whole text into dst, a new buffer is allocated if dst is null or too small
+     *
+     * @return the buffer holding the text, flipped for reading; null if the file doesn't exist
+     */
+    public CharBuffer text(CharBuffer dst) {
+        ByteBuffer src = buffer();
+        if (src == null) {
+            return null;
+        }
+        //utf-8 never decodes to more chars than bytes
+        if (dst == null || dst.capacity() < src.remaining()) {
+            dst = CharBuffer.allocate(src.remaining());
+        }
+        dst.clear();
+        CharsetDecoder decoder = newDecoder();
+        decoder.decode(src, dst, true);
+        decoder.flush(dst);
+        dst.flip();
+        return dst;
+    }
+
+    /**
+     * decode the text chunk by chunk into the same buffer, so a large off-heap cache
+     * never needs a heap copy of the whole text
+     *
+     * @param chunk reused for every callback, flipped for reading; needs room for at least 2 chars
+     *              so a surrogate pair always fits
+     */
+    public void eachTextChunk(CharBuffer chunk, GroovyArray.ArrayEach<CharBuffer> each) {
+        if (chunk.capacity() < 2) {
+            throw new IllegalArgumentException("chunk capacity must be at least 2: " + chunk.capacity());
+        }
+        ByteBuffer src = buffer();
+        if (src == null) {
+            return;
+        }
+        CharsetDecoder decoder = newDecoder();
+        chunk.clear();
+        boolean endOfInput = false;
+        while (true) {
+            CoderResult result = endOfInput ? decoder.flush(chunk) : decoder.decode(src, chunk, true);
+            if (result.isOverflow()) {
+                chunk.flip();
+                each.each(chunk);
+                chunk.clear();
+            } else if (!endOfInput) {
+                endOfInput = true;
+            } else {
+                break;
+            }
+        }
+        if (chunk.position() > 0) {
+            chunk.flip();
+            each.each(chunk);
+        }
+    }
+
+    /**
+     * @return bytes held by the {@link Storage#DIRECT} and {@link Storage#MAPPED} caches of all instances.
+     * the memory is only freed once the garbage collector reclaims the buffer, so a dropped cache is counted
+     * until then, as are the buffers returned by {@link #buffer()} still in use
+     */
+    public static long offHeapBytes() {
+        OffHeap.drain();
+        return sOffHeapBytes.get();
+    }
+
+    private static CharsetDecoder newDecoder() {
+        //same as new String(bytes): replace malformed input instead of failing
+        return UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
     public synchronized boolean setText(String text) {
+        releaseMapping();
         return FileIOUtils.writeFileFromString(mPath, text);
     }
 
     public synchronized boolean setBytes(byte[] bytes) {
+        releaseMapping();
         return FileIOUtils.writeFileFromBytesByStream(mPath, bytes);
     }
 
+    /**
+     * write as gzip, {@link #text()} and {@link #bytes()} will unzip it transparently
+     */
+    public synchronized boolean setTextByGzip(String text) {
+        return text != null && setBytesByGzip(text.getBytes());
+    }
+
+    public synchronized boolean setBytesByGzip(byte[] bytes) {
+        releaseMapping();
+        return FileIOUtils.writeFileFromBytesByGzip(mPath, bytes);
+    }
+
     public void eachLine(GroovyArray.ArrayEach<String> text) {
         eachLine(text, NOT_USE_CACHED);
     }
@@ -82,27 +254,606 @@ public class GroovyFile {
     }
 
 
+    public void splitEachLine(char delimiter, GroovyArray.ArrayEach<LineFields> each) {
+        splitEachLine(delimiter, each, NOT_USE_CACHED);
+    }
+
+    /**
+     * like groovy's splitEachLine, but fields are views over {@link #text()} and the list is reused,
+     * no String is created for a line or a field, see {@link LineFields}
+     */
+    public void splitEachLine(char delimiter, GroovyArray.ArrayEach<LineFields> each, boolean useCached) {
+        String text = text(useCached);
+        if (TextUtils.isEmpty(text)) {
+            return;
+        }
+        LineFields.split(text, delimiter, each);
+    }
+
+    /**
+     * like {@link #eachLine(GroovyArray.ArrayEach)} but from the last line to the first, reading the file
+     * backward block by block, see {@link #findLineReverse(GroovyArray.ArrayFinder)} to stop early
+     */
+    public void eachLineReverse(final GroovyArray.ArrayEach<String> each) {
+        findLineReverse(new GroovyArray.ArrayFinder<String>() {
+            @Override
+            public boolean find(String it) {
+                each.each(it);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * walk the lines from the last one and stop at the first line the finder accepts,
+     * only the blocks holding the lines walked are read. a gzip file can't be read backward,
+     * it is unzipped and split as a whole without filling the cache
+     *
+     * @return the accepted line, null if none or the file fails to read
+     */
+    public String findLineReverse(GroovyArray.ArrayFinder<String> finder) {
+        File file = new File(mPath);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            if (!ReverseLineReader.isGzip(file)) {
+                return ReverseLineReader.find(file, finder);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        //gzip can't be read backward, split the unzipped text instead
+        String[] lines = readLines();
+        if (lines == null) {
+            return null;
+        }
+        for (int i = lines.length - 1; i >= 0; i--) {
+            if (finder.find(lines[i])) {
+                return lines[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return at most the last n lines in file order, null if the file doesn't exist
+     */
+    public List<String> lastLines(final int n) {
+        if (!isExists()) {
+            return null;
+        }
+        final List<String> lines = new ArrayList<>(Math.min(Math.max(n, 0), 1024));
+        if (n > 0) {
+            findLineReverse(new GroovyArray.ArrayFinder<String>() {
+                @Override
+                public boolean find(String it) {
+                    lines.add(it);
+                    return lines.size() == n;
+                }
+            });
+        }
+        Collections.reverse(lines);
+        return lines;
+    }
+
+    /**
+     * like {@link #eachLine(GroovyArray.ArrayEach)} but the file is split into newline aligned byte ranges
+     * processed on up to parallelism threads of the executor, without loading the file into the cache
+     *
+     * @param executor null to run on the current thread
+     * @param each     called concurrently from several threads in no particular order, must be thread safe
+     * @return false if the file doesn't exist or fails to read, or a callback throws
+     * @throws IllegalArgumentException if parallelism is not positive
+     */
+    public boolean eachLineParallel(Executor executor, int parallelism, GroovyArray.ArrayEach<String> each) {
+        checkParallelism(parallelism);
+        File file = new File(mPath);
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            if (ReverseLineReader.isGzip(file)) {
+                //gzip can't be split, fallback to the current thread
+                String[] lines = readLines();
+                if (lines != null) {
+                    GroovyArray.each(lines, each);
+                }
+            } else {
+                ParallelLines.each(file, executor, parallelism, each);
+            }
+            return true;
+        } catch (IOException | RuntimeException | ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * reduce every range of lines with the reducer starting from null like {@link GroovyArray#inject(List, GroovyArray.ArrayInject)},
+     * then merge the results of the ranges with the combiner
+     *
+     * @param executor null to run on the current thread
+     * @param ordered  true to combine in file order after all ranges finish; false to combine each range
+     *                 as soon as it finishes, the combiner must not depend on the order
+     * @return null if there is no line, the file doesn't exist or fails to read, or a callback throws
+     * @throws IllegalArgumentException if parallelism is not positive
+     */
+    public <T> T injectLineParallel(Executor executor, int parallelism,
+                                    GroovyArray.ArrayInject<T, String> reducer,
+                                    GroovyArray.ArrayInject<T, T> combiner,
+                                    boolean ordered) {
+        checkParallelism(parallelism);
+        File file = new File(mPath);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            if (ReverseLineReader.isGzip(file)) {
+                //gzip can't be split, reduce all lines as a single range on the current thread
+                String[] lines = readLines();
+                if (lines == null) {
+                    return null;
+                }
+                return combiner.plus(null, GroovyArray.inject(lines, reducer));
+            }
+            return ParallelLines.inject(file, executor, parallelism, reducer, combiner, ordered);
+        } catch (IOException | RuntimeException | ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * collect every line in parallel, nulls are dropped like {@link GroovyArray#collect(List, GroovyArray.ArrayCollectTransform)}
+     *
+     * @param ordered true to keep the results in file order, false to append the results of each range as it finishes
+     * @return null if there is no result, the file doesn't exist or fails to read, or a callback throws
+     * @throws IllegalArgumentException if parallelism is not positive
+     */
+    public <R> List<R> collectLineParallel(Executor executor, int parallelism,
+                                           final GroovyArray.ArrayCollectTransform<String, R> transform,
+                                           boolean ordered) {
+        List<R> collects = injectLineParallel(executor, parallelism, new GroovyArray.ArrayInject<List<R>, String>() {
+            @Override
+            public List<R> plus(List<R> total, String it) {
+                R collect = transform.transform(it);
+                if (collect != null) {
+                    if (total == null) {
+                        total = new ArrayList<>();
+                    }
+                    total.add(collect);
+                }
+                return total;
+            }
+        }, new GroovyArray.ArrayInject<List<R>, List<R>>() {
+            @Override
+            public List<R> plus(List<R> total, List<R> it) {
+                if (total == null) {
+                    return it;
+                }
+                if (it != null) {
+                    total.addAll(it);
+                }
+                return total;
+            }
+        }, ordered);
+        return collects == null || collects.isEmpty() ? null : collects;
+    }
+
+    /**
+     * checked before any work, so a bad parallelism fails the same way with or without an executor
+     */
+    private static void checkParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+    }
+
+    /**
+     * follow the file like tail -F, only the bytes appended since the last {@link FileTail#poll()} are read,
+     * the cache of this instance is not touched
+     *
+     * @param each called with every complete line, without the line terminator
+     */
+    public FileTail follow(GroovyArray.ArrayEach<String> each) {
+        return follow(false, each);
+    }
+
+    /**
+     * @param fromEnd skip the lines already in the file
+     */
+    public FileTail follow(boolean fromEnd, GroovyArray.ArrayEach<String> each) {
+        return new FileTail(new File(mPath), fromEnd, each);
+    }
+
     public synchronized Cached getCacheOrWait(String path, boolean forceCreated) {
+        if (mCached == null
+                && !forceCreated
+                && mStorage == Storage.HEAP) {
+            //adopt the content loaded by FilePrefetch if the file hasn't changed since
+            Cached prefetched = takePrefetched(path);
+            if (prefetched != null && prefetched.isFresh(path)) {
+                mCached = prefetched;
+            }
+        }
         if (mCached == null
                 || forceCreated) {
             //create cached
-            byte[] bytes = FileIOUtils.readFile2BytesByChannel(path);
-            mCached = new Cached(bytes);
+            FileIOUtils.getMetrics().onCacheMiss(path);
+            setCached(readCached(path, mStorage));
+        } else {
+            FileIOUtils.getMetrics().onCacheHit(path);
         }
         return mCached;
     }
 
+    private static byte[] readBytes(String path) {
+        byte[] bytes = FileIOUtils.readFile2BytesByChannel(path);
+        if (FileIOUtils.isGzip(bytes)) {
+            //transparently read gzip files, fallback to raw bytes if it's not a valid gzip
+            byte[] unzipped = FileIOUtils.gunzip(bytes);
+            if (unzipped != null) {
+                bytes = unzipped;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * read and split the lines like {@link #eachLine(GroovyArray.ArrayEach)} without touching the cache of this instance,
+     * for the gzip files that can't be read in place
+     *
+     * @return null if the file is empty or fails to read
+     */
+    private String[] readLines() {
+        byte[] bytes = readBytes(mPath);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return new String(bytes, UTF_8).split("\n");
+    }
+
+    private static Cached readCached(String path, Storage storage) {
+        if (storage == Storage.HEAP) {
+            return new Cached(readBytes(path));
+        }
+        ByteBuffer buffer = storage == Storage.MAPPED
+                ? FileIOUtils.readFile2BufferByMap(path)
+                : FileIOUtils.readFile2BufferByDirect(path);
+        if (buffer == null) {
+            //keep the same behaviour as the heap storage when the file fails to read
+            return new Cached(readBytes(path));
+        }
+        if (FileIOUtils.isGzip(buffer)) {
+            //gzip can't be mapped as is, unzip the bytes already read on the heap and keep the result off heap
+            byte[] zipped = new byte[buffer.remaining()];
+            buffer.duplicate().get(zipped);
+            byte[] unzipped = FileIOUtils.gunzip(zipped);
+            if (unzipped != null) {
+                buffer = ByteBuffer.allocateDirect(unzipped.length);
+                buffer.put(unzipped);
+                buffer.flip();
+            }
+        }
+        return new Cached(buffer);
+    }
+
+    /**
+     * load the file into the shared cache, the first {@link GroovyFile} reading the same path takes it over
+     *
+     * @return false if the file doesn't exist or fails to read
+     */
+    static boolean prefetch(String path) {
+        File file = new File(path);
+        String key = file.getAbsolutePath();
+        Prefetch prefetch;
+        Prefetch running;
+        synchronized (sPrefetched) {
+            running = sPrefetched.get(key);
+            if (running != null && running.isDone() && !running.isFresh(path)) {
+                removePrefetched(key);
+                running = null;
+            }
+            prefetch = running == null ? new Prefetch() : null;
+            if (prefetch != null) {
+                sPrefetched.put(key, prefetch);
+            }
+        }
+        if (running != null) {
+            //the same path is already loaded or loading, share it instead of reading twice
+            return running.await() != null;
+        }
+        Cached cached = null;
+        try {
+            long lastModified = file.lastModified();
+            long length = file.length();
+            byte[] bytes = lastModified == 0 ? null : readBytes(path);
+            cached = bytes == null ? null : new Cached(bytes, length, lastModified);
+        } finally {
+            prefetch.complete(cached);
+            synchronized (sPrefetched) {
+                //only count it if it wasn't taken over or cleared while loading
+                if (sPrefetched.get(key) == prefetch) {
+                    if (cached == null) {
+                        sPrefetched.remove(key);
+                    } else {
+                        sPrefetchedBytes += cached.heapBytes();
+                        trimPrefetched();
+                    }
+                }
+            }
+        }
+        return cached != null;
+    }
+
+    static boolean isPrefetched(String path) {
+        String key = new File(path).getAbsolutePath();
+        synchronized (sPrefetched) {
+            Prefetch prefetch = sPrefetched.get(key);
+            if (prefetch == null || !prefetch.isDone()) {
+                return false;
+            }
+            if (!prefetch.isFresh(path)) {
+                removePrefetched(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    static void clearPrefetched() {
+        synchronized (sPrefetched) {
+            sPrefetched.clear();
+            sPrefetchedBytes = 0;
+        }
+    }
+
+    /**
+     * remove the prefetched content of path, waiting for it if it's still loading
+     *
+     * @return null if path isn't prefetched or fails to read
+     */
+    private static Cached takePrefetched(String path) {
+        Prefetch prefetch;
+        synchronized (sPrefetched) {
+            prefetch = removePrefetched(new File(path).getAbsolutePath());
+        }
+        return prefetch == null ? null : prefetch.await();
+    }
+
+    /**
+     * must hold the lock of sPrefetched
+     */
+    private static Prefetch removePrefetched(String key) {
+        Prefetch prefetch = sPrefetched.remove(key);
+        if (prefetch != null && prefetch.isDone() && prefetch.cached != null) {
+            sPrefetchedBytes -= prefetch.cached.heapBytes();
+        }
+        return prefetch;
+    }
+
+    /**
+     * must hold the lock of sPrefetched, the entries still loading are not counted and kept
+     */
+    private static void trimPrefetched() {
+        Iterator<Map.Entry<String, Prefetch>> iterator = sPrefetched.entrySet().iterator();
+        while (sPrefetchedBytes > MAX_PREFETCHED_BYTES && iterator.hasNext()) {
+            Prefetch prefetch = iterator.next().getValue();
+            if (prefetch.isDone()) {
+                iterator.remove();
+                if (prefetch.cached != null) {
+                    sPrefetchedBytes -= prefetch.cached.heapBytes();
+                }
+            }
+        }
+    }
+
+    /**
+     * invalidate the cached content when the file changes, so {@link #text()} and {@link #bytes()}
+     * can always hit memory without a stat per read
+     *
+     * @return false if the watcher fails to watch the path
+     */
+    public synchronized boolean watch(FileWatcher watcher) {
+        unwatch();
+        mWatch = watcher.watch(new File(mPath), this::invalidate);
+        setCached(null);
+        return mWatch != null;
+    }
+
+    public synchronized void unwatch() {
+        FileIOUtils.closeIOQuietly(mWatch);
+        mWatch = null;
+    }
+
+    public synchronized void invalidate() {
+        setCached(null);
+    }
+
+    /**
+     * writing truncates the file, drop the mapping first so it is never read past the new end
+     */
+    private void releaseMapping() {
+        if (mStorage == Storage.MAPPED) {
+            setCached(null);
+        }
+    }
+
+    private synchronized void setCached(Cached cached) {
+        mCached = cached;
+    }
+
+    /**
+     * @return cached content if this file is watched and cached, skipping {@link #isExists()}
+     */
+    private synchronized Cached getWatchedCache(boolean forceCreated) {
+        if (mWatch == null
+                || mCached == null
+                || forceCreated) {
+            return null;
+        }
+        FileIOUtils.getMetrics().onCacheHit(mPath);
+        return mCached;
+    }
+
+    /**
+     * where {@link GroovyFile} keeps the cached content
+     */
+    public enum Storage {
+        /**
+         * byte[] plus the decoded String on the java heap, the default
+         */
+        HEAP,
+        /**
+         * a direct ByteBuffer outside the java heap, text is decoded on every {@link #text()},
+         * prefer {@link #text(CharBuffer)} or {@link #eachTextChunk(CharBuffer, GroovyArray.ArrayEach)}
+         */
+        DIRECT,
+        /**
+         * a read-only mapping of the file, backed by the page cache and nothing copied.
+         * only for files that are never rewritten in place by others: reading a mapping past
+         * the end of a truncated file crashes the process with SIGBUS
+         */
+        MAPPED
+    }
 
     /**
      * only support utf-8
      */
-    private class Cached {
+    private static class Cached {
         public final byte[] bytes;
         public final String text;
+        private final ByteBuffer buffer;
+        /**
+         * the direct or mapped buffer owning the memory, null on heap. kept here as well because
+         * not every runtime makes read-only views reference the buffer they were made from
+         */
+        private final ByteBuffer root;
+        private final long length;
+        private final long lastModified;
 
         private Cached(byte[] bytes) {
+            this(bytes, -1, 0);
+        }
+
+        private Cached(byte[] bytes, long length, long lastModified) {
             this.bytes = bytes;
             this.text = new String(this.bytes);
+            this.buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            this.root = null;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        private Cached(ByteBuffer buffer) {
+            this.bytes = null;
+            this.text = null;
+            this.buffer = buffer.asReadOnlyBuffer();
+            this.root = buffer;
+            OffHeap.track(buffer);
+            this.length = -1;
+            this.lastModified = 0;
+        }
+
+        private String text() {
+            return text != null ? text : UTF_8.decode(buffer.duplicate()).toString();
+        }
+
+        private byte[] bytes() {
+            if (bytes != null) {
+                return bytes;
+            }
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.duplicate().get(copy);
+            return copy;
+        }
+
+        /**
+         * @return heap taken by the bytes and the decoded text, 2 bytes per char
+         */
+        private long heapBytes() {
+            return bytes == null ? 0 : bytes.length + 2L * text.length();
+        }
+
+        private boolean isFresh(String path) {
+            File file = new File(path);
+            return file.lastModified() == lastModified
+                    && file.length() == length;
+        }
+    }
+
+    /**
+     * a file loading or loaded by FilePrefetch, readers of the same path wait for it instead of reading again
+     */
+    private static final class Prefetch {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Cached cached;
+
+        private void complete(Cached cached) {
+            this.cached = cached;
+            done.countDown();
+        }
+
+        private boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        private boolean isFresh(String path) {
+            return cached != null && cached.isFresh(path);
+        }
+
+        /**
+         * @return null if the file fails to read or the wait is interrupted
+         */
+        private Cached await() {
+            try {
+                done.await();
+                return cached;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * accounting of the direct or mapped buffer owning the memory of an off heap {@link Cached}, released once
+     * the garbage collector has reclaimed that buffer. views and duplicates handed out by {@link #buffer()}
+     * keep it reachable, so it stays counted while they are in use
+     */
+    private static final class OffHeap extends PhantomReference<ByteBuffer> {
+        private final long bytes;
+
+        private OffHeap(ByteBuffer buffer) {
+            super(buffer, sOffHeapQueue);
+            this.bytes = buffer.capacity();
+        }
+
+        private static void track(ByteBuffer buffer) {
+            drain();
+            OffHeap offHeap = new OffHeap(buffer);
+            sOffHeap.add(offHeap);
+            sOffHeapBytes.addAndGet(offHeap.bytes);
+        }
+
+        private static void drain() {
+            Reference<? extends ByteBuffer> collected;
+            while ((collected = sOffHeapQueue.poll()) != null) {
+                ((OffHeap) collected).release();
+            }
+        }
+
+        private void release() {
+            sOffHeapBytes.addAndGet(-bytes);
+            sOffHeap.remove(this);
         }
     }
 
@@ -167,10 +918,176 @@ public class GroovyFile {
         });
     }
 
+    public static boolean copyDirectory(File src, File dest) {
+        return copyDirectory(src, dest, null, 1, null);
+    }
+
+    /**
+     * walk src with {@link #eachFileRecurse(File, FileEach)} and copy every file to the same relative path under dest
+     * with {@link FileIOUtils#copyFile(File, File, FileIOUtils.OnProgressListener)}
+     *
+     * @param executor    null to copy one by one on the current thread, otherwise up to maxInFlight files at a time
+     * @param listener    copied and total are the bytes of the whole directory, called from several threads
+     *                    when parallel, may be null
+     * @return true if every file is copied; stops at the first failure and returns false, files already copied are kept
+     */
+    public static boolean copyDirectory(File src, File dest, Executor executor, int maxInFlight,
+                                        final FileIOUtils.OnProgressListener listener) {
+        if (src == null || dest == null || !src.isDirectory()) {
+            return false;
+        }
+        final String root = src.getAbsolutePath();
+        final File destRoot = dest.getAbsoluteFile();
+        try {
+            //compare canonical paths so "a/../src/out" and symlinks are caught too
+            String canonicalRoot = src.getCanonicalPath();
+            String canonicalDest = destRoot.getCanonicalPath();
+            if (canonicalDest.equals(canonicalRoot) || canonicalDest.startsWith(canonicalRoot + File.separator)) {
+                //copying into its own subdirectory would walk the new copies as well
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (!destRoot.isDirectory() && !destRoot.mkdirs()) {
+            return false;
+        }
+        final List<File> files = new ArrayList<>();
+        final boolean[] created = {true};
+        final long[] total = {0};
+        eachFileRecurse(src, data -> {
+            if (data.isDirectory()) {
+                //create empty directories too
+                File target = new File(destRoot, relativePath(root, data));
+                created[0] &= target.isDirectory() || target.mkdirs();
+            } else {
+                files.add(data);
+                total[0] += data.length();
+            }
+        });
+        if (!created[0]) {
+            return false;
+        }
+
+        final AtomicLong copied = new AtomicLong();
+        GroovyArray.ArrayEach<File> copy = data -> {
+            final long[] last = {0};
+            FileIOUtils.OnProgressListener progress = listener == null ? null : (file, fileCopied, fileTotal) -> {
+                long done = copied.addAndGet(fileCopied - last[0]);
+                last[0] = fileCopied;
+                listener.onProgress(file, done, total[0]);
+            };
+            if (!FileIOUtils.copyFile(data, new File(destRoot, relativePath(root, data)), progress)) {
+                throw new IllegalStateException("failed to copy " + data);
+            }
+        };
+        try {
+            if (executor == null) {
+                GroovyArray.each(files, copy);
+            } else {
+                GroovyArray.eachAsync(files, executor, maxInFlight, copy).get();
+            }
+            return true;
+        } catch (IllegalStateException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * walk only the paths under root changed since the last call, the snapshot is kept in snapshotFile;
+     * on the first call every path is added
+     *
+     * @param trustDirectoryMtime see {@link FileSnapshot#diff(File, FileSnapshot, boolean)}
+     * @param each                path is relative to root and separated by '/', called for added, then modified, then deleted
+     * @return true if the new snapshot is saved
+     */
+    public static boolean eachFileChange(File root, File snapshotFile, boolean trustDirectoryMtime, FileChangeEach each) {
+        FileSnapshot.Diff diff = FileSnapshot.diff(root, FileSnapshot.readFrom(snapshotFile), trustDirectoryMtime);
+        for (String path : diff.added) {
+            each.each(FileSnapshot.Change.ADDED, path);
+        }
+        for (String path : diff.modified) {
+            each.each(FileSnapshot.Change.MODIFIED, path);
+        }
+        for (String path : diff.deleted) {
+            each.each(FileSnapshot.Change.DELETED, path);
+        }
+        return diff.snapshot.writeTo(snapshotFile);
+    }
+
+    public static int grepFiles(File file, String token, FileMatch match) {
+        return grepFiles(file, token, null, 1, match);
+    }
+
+    /**
+     * search token in file, or in every file of the directory tree, matching its utf-8 bytes without loading files into the cache
+     *
+     * @param executor null to search one by one on the current thread, otherwise up to maxInFlight files at a time
+     * @param match    called once per hit, serialized under one lock so it needs no synchronization of its own;
+     *                 hits of the same file come in increasing offset
+     * @return the total number of hits, -1 if a file fails to read
+     */
+    public static int grepFiles(File file, String token, Executor executor, int maxInFlight, final FileMatch match) {
+        final ContentSearch search = new ContentSearch(token);
+        final List<File> files = new ArrayList<>();
+        if (file != null && file.isFile()) {
+            files.add(file);
+        } else {
+            eachFileRecurse(file, FileType.FILES, files::add);
+        }
+
+        final FileMatch locked = (data, offset, line, lineText) -> {
+            synchronized (match) {
+                match.match(data, offset, line, lineText);
+            }
+        };
+        final AtomicInteger hits = new AtomicInteger();
+        GroovyArray.ArrayEach<File> each = data -> {
+            int count = search.search(data, locked);
+            if (count < 0) {
+                throw new IllegalStateException("failed to search " + data);
+            }
+            hits.addAndGet(count);
+        };
+        try {
+            if (executor == null) {
+                GroovyArray.each(files, each);
+            } else {
+                GroovyArray.eachAsync(files, executor, maxInFlight, each).get();
+            }
+            return hits.get();
+        } catch (IllegalStateException | ExecutionException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static String relativePath(String root, File file) {
+        return file.getAbsolutePath().substring(root.length() + 1);
+    }
+
     public interface FileEach extends GroovyArray.ArrayEach<File> {
 
     }
 
+    public interface FileChangeEach {
+        void each(FileSnapshot.Change change, String path);
+    }
+
+    public interface FileMatch {
+        /**
+         * @param offset   byte offset of the hit in the file
+         * @param line     1-based number of the line holding the hit
+         * @param lineText the line holding the hit
+         */
+        void match(File file, long offset, long line, String lineText);
+    }
+
     public enum FileType {
         FILES,
         DIRECTORIES,
@@ -1,7 +1,26 @@
 package lamer.groovy;
 
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+/**
+ * 实现Groovy中对于Set的匕首方法
+ * 例如
+ * {@link #each(Set, SetEach)} -> 遍历集合
+ * {@link #intersect(Set, Set)} -> 交集
+ * {@link #union(Set, Set)} -> 并集
+ * {@link #minus(Set, Set)} -> 差集
+ * {@link #disjoint(Set, Set)} -> 两个集合是否没有交集
+ * {@link #containsAll(Set, Set)} -> 集合是否包含另一个集合的全部元素
+ * {@link #bloom(Set, double)} -> 用集合创建{@link BloomFilter}
+ * <p>
+ * 集合运算总是遍历较小的集合去探测较大的集合；两边都是同一排序的{@link SortedSet}时走线性归并。
+ * 参数为null时视为空集合，返回值总是新的集合。
+ */
 public class GroovySet {
 
     public static <T> void each(Set<T> ds, final SetEach<T> each) {
@@ -22,4 +41,255 @@ public class GroovySet {
         return ds == null || ds.isEmpty();
     }
 
+    // -------------------- INTERSECT -----------------------------
+
+    public static <T> Set<T> intersect(Set<T> left, Set<T> right) {
+        if (isEmpty(left) || isEmpty(right)) {
+            return newSet(left, right, 0);
+        }
+
+        Set<T> small = left.size() <= right.size() ? left : right;
+        Set<T> large = small == left ? right : left;
+
+        if (isMergeable(small, large)) {
+            Comparator<? super T> comparator = ((SortedSet<T>) small).comparator();
+            Set<T> result = new TreeSet<>(comparator);
+            Iterator<T> si = small.iterator();
+            Iterator<T> li = large.iterator();
+            T s = si.next();
+            T l = li.next();
+            for (; ; ) {
+                int cmp = compare(comparator, s, l);
+                if (cmp == 0) {
+                    result.add(s);
+                }
+                if (cmp <= 0) {
+                    if (!si.hasNext()) {
+                        break;
+                    }
+                    s = si.next();
+                }
+                if (cmp >= 0) {
+                    if (!li.hasNext()) {
+                        break;
+                    }
+                    l = li.next();
+                }
+            }
+            return result;
+        }
+
+        Set<T> result = newSet(left, right, small.size());
+        for (T data : small) {
+            if (large.contains(data)) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    // -------------------- UNION -----------------------------
+
+    public static <T> Set<T> union(Set<T> left, Set<T> right) {
+        if (isEmpty(left) && isEmpty(right)) {
+            return newSet(left, right, 0);
+        }
+
+        Set<T> small = sizeOf(left) <= sizeOf(right) ? left : right;
+        Set<T> large = small == left ? right : left;
+
+        Set<T> result;
+        if (isSameOrder(left, right) || (isEmpty(small) && large instanceof SortedSet)) {
+            // TreeSet(SortedSet) 是线性建树
+            result = new TreeSet<>((SortedSet<T>) large);
+        } else {
+            result = newSet(left, right, sizeOf(left) + sizeOf(right));
+            result.addAll(large);
+        }
+        if (!isEmpty(small)) {
+            result.addAll(small);
+        }
+        return result;
+    }
+
+    // -------------------- MINUS -----------------------------
+
+    /**
+     * @return ds中不在minus中的元素
+     */
+    public static <T> Set<T> minus(Set<T> ds, Set<T> minus) {
+        if (isEmpty(ds)) {
+            return newSet(ds, minus, 0);
+        }
+        if (isEmpty(minus)) {
+            return ds instanceof SortedSet ? new TreeSet<>((SortedSet<T>) ds) : new HashSet<>(ds);
+        }
+
+        if (isMergeable(ds, minus)) {
+            Comparator<? super T> comparator = ((SortedSet<T>) ds).comparator();
+            Set<T> result = new TreeSet<>(comparator);
+            Iterator<T> mi = minus.iterator();
+            T m = mi.next();
+            boolean exhausted = false;
+            for (T data : ds) {
+                int cmp = -1;
+                while (!exhausted && (cmp = compare(comparator, data, m)) > 0) {
+                    if (mi.hasNext()) {
+                        m = mi.next();
+                    } else {
+                        exhausted = true;
+                    }
+                }
+                if (exhausted || cmp != 0) {
+                    result.add(data);
+                }
+            }
+            return result;
+        }
+
+        Set<T> result = newSet(ds, minus, ds.size());
+        for (T data : ds) {
+            if (!minus.contains(data)) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    // -------------------- DISJOINT-CONTAINS -----------------------------
+
+    /**
+     * @return 两个集合没有任何公共元素时为true
+     */
+    public static <T> boolean disjoint(Set<T> left, Set<T> right) {
+        if (isEmpty(left) || isEmpty(right)) {
+            return true;
+        }
+
+        Set<T> small = left.size() <= right.size() ? left : right;
+        Set<T> large = small == left ? right : left;
+
+        if (isMergeable(small, large)) {
+            Comparator<? super T> comparator = ((SortedSet<T>) small).comparator();
+            Iterator<T> si = small.iterator();
+            Iterator<T> li = large.iterator();
+            T s = si.next();
+            T l = li.next();
+            for (; ; ) {
+                int cmp = compare(comparator, s, l);
+                if (cmp == 0) {
+                    return false;
+                }
+                if (cmp < 0) {
+                    if (!si.hasNext()) {
+                        return true;
+                    }
+                    s = si.next();
+                } else {
+                    if (!li.hasNext()) {
+                        return true;
+                    }
+                    l = li.next();
+                }
+            }
+        }
+
+        for (T data : small) {
+            if (large.contains(data)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return ds包含sub中全部元素时为true，sub为空时总是true
+     */
+    public static <T> boolean containsAll(Set<T> ds, Set<T> sub) {
+        if (isEmpty(sub)) {
+            return true;
+        }
+        if (isEmpty(ds) || sub.size() > ds.size()) {
+            return false;
+        }
+
+        if (isMergeable(sub, ds)) {
+            Comparator<? super T> comparator = ((SortedSet<T>) ds).comparator();
+            Iterator<T> di = ds.iterator();
+            for (T data : sub) {
+                int cmp;
+                do {
+                    if (!di.hasNext()) {
+                        return false;
+                    }
+                    cmp = compare(comparator, data, di.next());
+                } while (cmp > 0);
+                if (cmp != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (T data : sub) {
+            if (!ds.contains(data)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // -------------------- BLOOM -----------------------------
+
+    public static <T> BloomFilter<T> bloom(Set<T> ds, double fpp) {
+        return bloom(ds, fpp, null);
+    }
+
+    public static <T> BloomFilter<T> bloom(Set<T> ds, double fpp, BloomFilter.Hasher<? super T> hasher) {
+        BloomFilter<T> filter = BloomFilter.create(sizeOf(ds), fpp, hasher);
+        filter.putAll(ds);
+        return filter;
+    }
+
+    //----------------------- inner method -----------------------
+
+    private static <T> Set<T> newSet(Set<T> left, Set<T> right, int capacity) {
+        if (isSameOrder(left, right)) {
+            return new TreeSet<>(((SortedSet<T>) left).comparator());
+        }
+        return new HashSet<>(Math.max((int) (capacity / .75f) + 1, 16));
+    }
+
+    private static int sizeOf(Set<?> ds) {
+        return ds == null ? 0 : ds.size();
+    }
+
+    private static boolean isSameOrder(Set<?> left, Set<?> right) {
+        if (!(left instanceof SortedSet) || !(right instanceof SortedSet)) {
+            return false;
+        }
+        Comparator<?> lc = ((SortedSet<?>) left).comparator();
+        Comparator<?> rc = ((SortedSet<?>) right).comparator();
+        return lc == null ? rc == null : lc.equals(rc);
+    }
+
+    /**
+     * 同序的SortedSet，且 small * log2(large) 不小于 small + large 时，线性归并比逐个二分探测更快
+     */
+    private static boolean isMergeable(Set<?> small, Set<?> large) {
+        if (!isSameOrder(small, large)) {
+            return false;
+        }
+        long probe = (long) small.size() * (32 - Integer.numberOfLeadingZeros(large.size()));
+        return probe >= (long) small.size() + large.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int compare(Comparator<? super T> comparator, T left, T right) {
+        if (comparator == null) {
+            return ((Comparable<? super T>) left).compareTo(right);
+        } else {
+            return comparator.compare(left, right);
+        }
+    }
 }
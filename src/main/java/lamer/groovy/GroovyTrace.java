@@ -0,0 +1,98 @@
+package lamer.groovy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GroovyArray}的each/eachWithIndex/grep/collect耗时追踪，用于定位哪个回调导致了卡顿
+ * <p>
+ * 默认关闭，关闭时每次调用只多一次volatile读，循环体内没有额外开销。
+ * 开启后耗时不低于阈值的调用会生成一条{@link TraceRecord}交给{@link TraceSink}，
+ * sink在调用线程上同步执行，需要自己保证线程安全并且足够轻量。
+ * <pre>
+ *     GroovyTrace.enable(record -> Log.w("jank", record.toString()), 2, TimeUnit.MILLISECONDS);
+ * </pre>
+ */
+public final class GroovyTrace {
+
+    private static volatile TraceSink sSink;
+    private static volatile long sThresholdNanos;
+
+    private GroovyTrace() {
+        throw new UnsupportedOperationException("u can't instantiate me...");
+    }
+
+    public static void enable(TraceSink sink, long threshold, TimeUnit unit) {
+        sThresholdNanos = unit.toNanos(threshold);
+        sSink = sink;
+    }
+
+    public static void disable() {
+        sSink = null;
+    }
+
+    public static boolean isEnabled() {
+        return sSink != null;
+    }
+
+    /**
+     * @return 关闭时为0
+     */
+    static long begin() {
+        return sSink == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * @param start        {@link #begin()}的返回值
+     * @param callback     调用方传入的回调
+     * @param size         输入的元素数量
+     * @param visited      实际访问的元素数量
+     * @param terminatedAt 提前结束时的索引，没有提前结束为-1
+     */
+    static void end(String operation, long start, Object callback, int size, int visited, int terminatedAt) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        TraceSink sink = sSink;
+        if (sink == null || nanos < sThresholdNanos) {
+            return;
+        }
+        String name = callback == null ? null : callback.getClass().getName();
+        sink.onTrace(new TraceRecord(operation, name, size, visited, terminatedAt, nanos));
+    }
+
+    public interface TraceSink {
+        void onTrace(TraceRecord record);
+    }
+
+    public static final class TraceRecord {
+        /**
+         * each、eachWithIndex、grep、collect
+         */
+        public final String operation;
+        /**
+         * 回调的类名，lambda为所在外部类生成的合成类名
+         */
+        public final String callback;
+        public final int size;
+        public final int visited;
+        public final int terminatedAt;
+        public final long nanos;
+
+        TraceRecord(String operation, String callback, int size, int visited, int terminatedAt, long nanos) {
+            this.operation = operation;
+            this.callback = callback;
+            this.size = size;
+            this.visited = visited;
+            this.terminatedAt = terminatedAt;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return operation + "(" + callback + ") size=" + size + " visited=" + visited
+                    + (terminatedAt >= 0 ? " terminatedAt=" + terminatedAt : "")
+                    + " cost=" + TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+        }
+    }
+}
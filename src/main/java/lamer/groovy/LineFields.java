@@ -0,0 +1,218 @@
+package lamer.groovy;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * {@link GroovyFile#splitEachLine(char, GroovyArray.ArrayEach)}回调拿到的一行字段
+ * <p>
+ * 每个字段都是指向原文本的{@link Field}视图，不会为字段创建String，需要保留时调用{@link Field#toString()}。
+ * 整行只用一个实例，字段对象也会被复用，回调结束后不要再持有。
+ * <p>
+ * 引号规则和RFC 4180一致：以双引号开头的字段可以包含分隔符和换行，字段内的两个双引号表示一个双引号。
+ */
+public final class LineFields extends AbstractList<CharSequence> implements RandomAccess {
+
+    private static final char QUOTE = '"';
+
+    private Field[] mFields = new Field[8];
+    private int mSize;
+    private int mLine;
+    private int mNewlinesInQuotes;
+    /**
+     * 含有转义引号的字段反转义后放在这里，每行清空一次
+     */
+    private final StringBuilder mUnescaped = new StringBuilder();
+
+    private LineFields() {
+    }
+
+    @Override
+    public Field get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + mSize);
+        }
+        return mFields[index];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return 这一行在文本中的行号，从1开始；引号中的换行也计入行号
+     */
+    public int line() {
+        return mLine;
+    }
+
+    /**
+     * 按delimiter切分text中的每一行，对每一行回调一次
+     */
+    static void split(CharSequence text, char delimiter, GroovyArray.ArrayEach<? super LineFields> each) {
+        if (delimiter == QUOTE || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("illegal delimiter: " + delimiter);
+        }
+        final int length = text.length();
+        LineFields fields = new LineFields();
+        int line = 1;
+        int position = 0;
+        while (position < length) {
+            fields.mSize = 0;
+            fields.mLine = line;
+            fields.mUnescaped.setLength(0);
+            fields.mNewlinesInQuotes = 0;
+            // 逐个字段解析，直到行尾
+            while (true) {
+                if (position < length && text.charAt(position) == QUOTE) {
+                    position = fields.readQuoted(text, position + 1, delimiter);
+                } else {
+                    int start = position;
+                    while (position < length) {
+                        char c = text.charAt(position);
+                        if (c == delimiter || c == '\n') {
+                            break;
+                        }
+                        position++;
+                    }
+                    int end = position;
+                    if ((position == length || text.charAt(position) == '\n')
+                            && end > start && text.charAt(end - 1) == '\r') {
+                        end--;
+                    }
+                    fields.add(text, start, end);
+                }
+                if (position < length && text.charAt(position) == delimiter) {
+                    position++;
+                    continue;
+                }
+                break;
+            }
+            // 现在position在'\n'或文本末尾
+            line += fields.mNewlinesInQuotes + 1;
+            position++;
+            each.each(fields);
+        }
+    }
+
+    /**
+     * @param position 开头引号之后的位置
+     * @return 结尾引号之后的位置
+     */
+    private int readQuoted(CharSequence text, int position, char delimiter) {
+        final int length = text.length();
+        final int start = position;
+        int unescapedStart = -1;
+        while (position < length) {
+            char c = text.charAt(position);
+            if (c == QUOTE) {
+                if (position + 1 < length && text.charAt(position + 1) == QUOTE) {
+                    // 转义的引号，把到目前为止的内容搬到mUnescaped里
+                    if (unescapedStart < 0) {
+                        unescapedStart = mUnescaped.length();
+                        mUnescaped.append(text, start, position + 1);
+                    } else {
+                        mUnescaped.append(QUOTE);
+                    }
+                    position += 2;
+                    continue;
+                }
+                break;
+            }
+            if (c == '\n') {
+                mNewlinesInQuotes++;
+            }
+            if (unescapedStart >= 0) {
+                mUnescaped.append(c);
+            }
+            position++;
+        }
+        if (unescapedStart >= 0) {
+            add(mUnescaped, unescapedStart, mUnescaped.length());
+        } else {
+            add(text, start, position);
+        }
+        // 跳过结尾引号，引号后到分隔符之前的内容按RFC 4180是不合法的，这里直接忽略
+        position++;
+        while (position < length) {
+            char c = text.charAt(position);
+            if (c == delimiter || c == '\n') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private void add(CharSequence source, int start, int end) {
+        if (mSize == mFields.length) {
+            Field[] grown = new Field[mSize * 2];
+            System.arraycopy(mFields, 0, grown, 0, mSize);
+            mFields = grown;
+        }
+        Field field = mFields[mSize];
+        if (field == null) {
+            field = new Field();
+            mFields[mSize] = field;
+        }
+        field.reset(source, start, end);
+        mSize++;
+    }
+
+    /**
+     * 指向原文本中一段字符的视图
+     */
+    public static final class Field implements CharSequence {
+        private CharSequence mSource;
+        private int mStart;
+        private int mEnd;
+
+        private Field() {
+        }
+
+        void reset(CharSequence source, int start, int end) {
+            this.mSource = source;
+            this.mStart = start;
+            this.mEnd = end;
+        }
+
+        @Override
+        public int length() {
+            return mEnd - mStart;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= mEnd - mStart) {
+                throw new IndexOutOfBoundsException("index=" + index + " length=" + length());
+            }
+            return mSource.charAt(mStart + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        /**
+         * 不创建String，逐个字符比较
+         */
+        public boolean contentEquals(CharSequence other) {
+            if (other == null || other.length() != length()) {
+                return false;
+            }
+            for (int i = 0, len = length(); i < len; i++) {
+                if (mSource.charAt(mStart + i) != other.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return mSource.subSequence(mStart, mEnd).toString();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package lamer.groovy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带缓存的{@link GroovyArray.ArrayCollectTransform}，相同的输入只计算一次，用于日期解析、格式化这类重复值多且开销大的转换
+ * <p>
+ * 缓存是容量固定的LRU，超过容量时淘汰最久没有用到的。默认按equals/hashCode比较输入，
+ * {@link #identity(GroovyArray.ArrayCollectTransform, int)}按引用比较，适合equals本身开销大或没有实现equals的对象。
+ * <p>
+ * 实例可以跨多次{@link GroovyArray#collect(java.util.List, GroovyArray.ArrayCollectTransform)}、跨线程复用。
+ * 转换在锁外执行，并发时同一个输入可能被计算不止一次，转换本身需要是无副作用的。
+ * <pre>
+ *     MemoizedTransform&lt;String, Uri&gt; parse = MemoizedTransform.of(s -> Uri.parse(s), 256);
+ *     List&lt;Uri&gt; uris = GroovyArray.collect(lines, parse);
+ *     Log.d("memo", "hitRate=" + parse.hitRate());
+ * </pre>
+ */
+public final class MemoizedTransform<T, R> implements GroovyArray.ArrayCollectTransform<T, R> {
+
+    /**
+     * 代替null的key和结果，LinkedHashMap.get返回null时无法区分"没有缓存"和"结果为null"
+     */
+    private static final Object NULL = new Object();
+
+    private final GroovyArray.ArrayCollectTransform<T, R> mTransform;
+    private final boolean mIdentity;
+    private final Map<Object, Object> mCache;
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private MemoizedTransform(GroovyArray.ArrayCollectTransform<T, R> transform, final int maxSize, boolean identity) {
+        if (transform == null) {
+            throw new NullPointerException("transform == null");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.mTransform = transform;
+        this.mIdentity = identity;
+        this.mCache = new LinkedHashMap<Object, Object>(Math.min(maxSize, 1 << 10), .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param maxSize 最多缓存的输入数量
+     */
+    public static <T, R> MemoizedTransform<T, R> of(GroovyArray.ArrayCollectTransform<T, R> transform, int maxSize) {
+        return new MemoizedTransform<>(transform, maxSize, false);
+    }
+
+    /**
+     * 按引用比较输入的缓存
+     */
+    public static <T, R> MemoizedTransform<T, R> identity(GroovyArray.ArrayCollectTransform<T, R> transform, int maxSize) {
+        return new MemoizedTransform<>(transform, maxSize, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public R transform(T it) {
+        Object key = keyOf(it);
+        Object cached;
+        synchronized (mCache) {
+            cached = mCache.get(key);
+        }
+        if (cached != null) {
+            mHitCount.incrementAndGet();
+            return cached == NULL ? null : (R) cached;
+        }
+        mMissCount.incrementAndGet();
+        R result = mTransform.transform(it);
+        synchronized (mCache) {
+            mCache.put(key, result == null ? NULL : result);
+        }
+        return result;
+    }
+
+    public long hitCount() {
+        return mHitCount.get();
+    }
+
+    public long missCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * @return 命中次数 / 总次数，还没有调用过时为0
+     */
+    public double hitRate() {
+        long hit = mHitCount.get();
+        long total = hit + mMissCount.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int size() {
+        synchronized (mCache) {
+            return mCache.size();
+        }
+    }
+
+    /**
+     * 清空缓存和统计
+     */
+    public void clear() {
+        synchronized (mCache) {
+            mCache.clear();
+        }
+        mHitCount.set(0);
+        mMissCount.set(0);
+    }
+
+    private Object keyOf(T it) {
+        if (it == null) {
+            return NULL;
+        }
+        return mIdentity ? new IdentityKey(it) : it;
+    }
+
+    private static final class IdentityKey {
+        private final Object mValue;
+
+        IdentityKey(Object value) {
+            this.mValue = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).mValue == mValue;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mValue);
+        }
+    }
+}
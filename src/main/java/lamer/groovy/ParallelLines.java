@@ -0,0 +1,229 @@
+package lamer.groovy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * {@link GroovyFile#eachLineParallel(Executor, int, GroovyArray.ArrayEach)}等方法的实现
+ * <p>
+ * 把文件切成若干段，每段的边界都在'\n'之后，再把各段交给{@link GroovyArray#collectAsync(List, Executor, int, GroovyArray.ArrayCollectTransform)}，
+ * 每段单独读入、按行解码和处理。'\n'这个字节不会出现在UTF-8多字节字符中间，所以按字节切分不会截断字符。
+ * 行的划分和{@link GroovyFile#eachLine(GroovyArray.ArrayEach)}一致：按'\n'切分，保留'\r'，去掉末尾的空行。
+ */
+final class ParallelLines {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MIN_SPLIT = 1 << 20;
+    /**
+     * 每段的上限，也是每个任务同时占用的最大字节数组
+     */
+    private static final int MAX_SPLIT = 8 << 20;
+    /**
+     * 每个线程大约分到的段数，段数多一些，行长不均匀时负载更平衡
+     */
+    private static final int SPLITS_PER_WORKER = 4;
+
+    private final File mFile;
+
+    private ParallelLines(File file) {
+        this.mFile = file;
+    }
+
+    /**
+     * 每段的行交给reducer，从null开始累积；各段的结果再用combiner合并
+     *
+     * @param ordered 为true时等所有段完成后按文件顺序合并；为false时每段完成就合并，combiner需要和顺序无关
+     * @return 没有任何行时为null
+     * @throws IOException 读取失败
+     */
+    static <T> T inject(File file, Executor executor, int parallelism,
+                        final GroovyArray.ArrayInject<T, String> reducer,
+                        final GroovyArray.ArrayInject<T, T> combiner,
+                        boolean ordered) throws IOException, ExecutionException, InterruptedException {
+        final ParallelLines lines = new ParallelLines(file);
+        List<long[]> splits = lines.split(parallelism);
+        if (splits.isEmpty()) {
+            return null;
+        }
+        if (ordered || executor == null) {
+            List<T> results = run(splits, executor, parallelism, new GroovyArray.ArrayCollectTransform<long[], T>() {
+                @Override
+                public T transform(long[] it) {
+                    return lines.reduce(it, reducer);
+                }
+            });
+            T total = null;
+            for (T result : results) {
+                total = combiner.plus(total, result);
+            }
+            return total;
+        }
+        final Object lock = new Object();
+        final List<T> total = new ArrayList<>(1);
+        total.add(null);
+        run(splits, executor, parallelism, new GroovyArray.ArrayCollectTransform<long[], T>() {
+            @Override
+            public T transform(long[] it) {
+                T result = lines.reduce(it, reducer);
+                if (result != null) {
+                    synchronized (lock) {
+                        total.set(0, combiner.plus(total.get(0), result));
+                    }
+                }
+                return null;
+            }
+        });
+        synchronized (lock) {
+            return total.get(0);
+        }
+    }
+
+    /**
+     * 每行回调一次，回调在多个线程上同时执行，同一段内的行按文件顺序
+     */
+    static void each(File file, Executor executor, int parallelism,
+                     final GroovyArray.ArrayEach<String> each) throws IOException, ExecutionException, InterruptedException {
+        final ParallelLines lines = new ParallelLines(file);
+        run(lines.split(parallelism), executor, parallelism, new GroovyArray.ArrayCollectTransform<long[], Object>() {
+            @Override
+            public Object transform(long[] it) {
+                lines.reduce(it, new GroovyArray.ArrayInject<Object, String>() {
+                    @Override
+                    public Object plus(Object total, String line) {
+                        each.each(line);
+                        return null;
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
+    private static <R> List<R> run(List<long[]> splits, Executor executor, int parallelism,
+                                   GroovyArray.ArrayCollectTransform<long[], R> transform)
+            throws ExecutionException, InterruptedException {
+        if (executor == null) {
+            List<R> results = GroovyArray.collect(splits, transform);
+            return results == null ? new ArrayList<R>() : results;
+        }
+        List<R> results = GroovyArray.collectAsync(splits, executor, parallelism, transform).get();
+        return results == null ? new ArrayList<R>() : results;
+    }
+
+    /**
+     * @return 每段为{start, end}，按文件顺序；除了最后一段，每段都以'\n'结尾
+     */
+    private List<long[]> split(int parallelism) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(mFile, "r");
+            FileChannel fc = raf.getChannel();
+            final long end = contentEnd(fc);
+            long target = end / ((long) Math.max(parallelism, 1) * SPLITS_PER_WORKER);
+            target = Math.max(MIN_SPLIT, Math.min(MAX_SPLIT, target));
+            List<long[]> splits = new ArrayList<>();
+            long start = 0;
+            while (start < end) {
+                long stop = start + target >= end ? end : nextLineStart(fc, start + target, end);
+                splits.add(new long[]{start, stop});
+                start = stop;
+            }
+            return splits;
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+
+    /**
+     * @return 去掉末尾连续的'\n'之后的长度
+     */
+    private static long contentEnd(FileChannel fc) throws IOException {
+        long end = fc.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (end > 0) {
+            int len = (int) Math.min(buffer.capacity(), end);
+            buffer.clear();
+            buffer.limit(len);
+            readFully(fc, buffer, end - len);
+            for (int i = len - 1; i >= 0; i--) {
+                if (buffer.get(i) != '\n') {
+                    return end - (len - 1 - i);
+                }
+            }
+            end -= len;
+        }
+        return 0;
+    }
+
+    /**
+     * @return position之后第一个'\n'的下一个位置，找不到时为end
+     */
+    private static long nextLineStart(FileChannel fc, long position, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < end) {
+            int len = (int) Math.min(buffer.capacity(), end - position);
+            buffer.clear();
+            buffer.limit(len);
+            readFully(fc, buffer, position);
+            for (int i = 0; i < len; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += len;
+        }
+        return end;
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (fc.read(buffer, position + buffer.position()) <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * 按位置把一段读进字节数组，再按行交给reducer
+     */
+    private <T> T reduce(long[] split, GroovyArray.ArrayInject<T, String> reducer) {
+        RandomAccessFile raf = null;
+        try {
+            if (split[1] - split[0] > Integer.MAX_VALUE) {
+                // 只有一行超过2GB时段才会这么长
+                throw new IOException("line too long at " + split[0] + " in " + mFile);
+            }
+            raf = new RandomAccessFile(mFile, "r");
+            final int length = (int) (split[1] - split[0]);
+            byte[] bytes = new byte[length];
+            readFully(raf.getChannel(), ByteBuffer.wrap(bytes), split[0]);
+            T total = null;
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    total = reducer.plus(total, new String(bytes, start, i - start, UTF_8));
+                    start = i + 1;
+                }
+            }
+            if (start < length) {
+                // 只有最后一段会走到这里
+                total = reducer.plus(total, new String(bytes, start, length - start, UTF_8));
+            }
+            return total;
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to read " + mFile, e);
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+}
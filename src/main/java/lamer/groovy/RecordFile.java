@@ -0,0 +1,413 @@
+package lamer.groovy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * 定长记录文件，整个文件映射到内存，按索引随机读取，不需要把文件读成byte[]再手动切分
+ * <p>
+ * 格式：magic(int) version(int) width(int) 保留(int) count(long)，之后是count条width字节的记录，大端。
+ * 追加时先写记录再更新头部的count，进程中途被杀时只会丢掉最后没有计入count的记录。
+ * 映射会按需成倍扩大，{@link #close()}时把文件截回实际长度；单个文件最大2GB。
+ * <p>
+ * 所有方法都在同一把锁下执行，{@link #each(GroovyArray.ArrayEach)}等回调中不要长时间阻塞。
+ * 回调拿到的{@link Record}是被复用的游标，直接从映射中读字段，不要在回调外持有。
+ * <pre>
+ *     RecordFile records = RecordFile.open(new File(dir, "telemetry.bin"), 16);
+ *     records.append(ByteBuffer.allocate(16).putLong(time).putInt(type).putInt(value).array());
+ *     int firstError = records.findIndex(record -> record.getInt(8) == TYPE_ERROR);
+ *     records.close();
+ * </pre>
+ */
+public final class RecordFile implements Closeable {
+
+    private static final int MAGIC = 0x47524631; // "GRF1"
+    private static final int VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+    private static final int COUNT_OFFSET = 16;
+    private static final int MIN_MAP_SIZE = 64 << 10;
+
+    private final File mFile;
+    private final RandomAccessFile mRaf;
+    private final FileChannel mChannel;
+    private final int mWidth;
+    private int mCount;
+    private MappedByteBuffer mMap;
+
+    private RecordFile(File file, RandomAccessFile raf, int width, int count, MappedByteBuffer map) {
+        this.mFile = file;
+        this.mRaf = raf;
+        this.mChannel = raf.getChannel();
+        this.mWidth = width;
+        this.mCount = count;
+        this.mMap = map;
+    }
+
+    /**
+     * 打开已有的记录文件，宽度从头部读取
+     *
+     * @return 文件不存在或格式不对时返回null
+     */
+    public static RecordFile open(File file) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        return open(file, 0);
+    }
+
+    /**
+     * 打开记录文件，不存在时创建
+     *
+     * @param width 每条记录的字节数，和已有文件不一致时返回null；为0时使用已有文件的宽度
+     * @return 打开失败返回null
+     */
+    public static RecordFile open(File file, int width) {
+        if (file == null || width < 0) {
+            return null;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            MappedByteBuffer map;
+            int count;
+            if (size == 0) {
+                if (width == 0) {
+                    throw new IOException("width is required to create " + file);
+                }
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize(HEADER_SIZE, MIN_MAP_SIZE));
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(8, width);
+                map.putLong(COUNT_OFFSET, 0);
+                count = 0;
+            } else {
+                if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    throw new IOException("bad record file size: " + size);
+                }
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                int stored = map.getInt(8);
+                long storedCount = map.getLong(COUNT_OFFSET);
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || stored <= 0) {
+                    throw new IOException("not a record file: " + file);
+                }
+                if (width != 0 && width != stored) {
+                    throw new IOException("width mismatch: " + width + " != " + stored);
+                }
+                // 用除法比较，损坏的头部中很大的count乘上width会溢出
+                if (storedCount < 0 || storedCount > (size - HEADER_SIZE) / stored) {
+                    throw new IOException("truncated record file: " + file);
+                }
+                width = stored;
+                count = (int) storedCount;
+            }
+            return new RecordFile(file, raf, width, count, map);
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileIOUtils.closeIO(raf);
+            return null;
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public int width() {
+        return mWidth;
+    }
+
+    public synchronized int count() {
+        return mCount;
+    }
+
+    //----------------------- write -----------------------
+
+    public boolean append(byte[] record) {
+        return append(record, 0, 1);
+    }
+
+    /**
+     * 追加records条连续存放的记录
+     *
+     * @param offset bytes中第一条记录的起始位置
+     */
+    public synchronized boolean append(byte[] bytes, int offset, int records) {
+        checkOpen();
+        if (records <= 0 || offset < 0 || offset + (long) records * mWidth > bytes.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " records=" + records + " length=" + bytes.length);
+        }
+        long end = positionOf(mCount) + (long) records * mWidth;
+        if (!ensureCapacity(end)) {
+            return false;
+        }
+        ByteBuffer target = mMap.duplicate();
+        target.position((int) positionOf(mCount));
+        target.put(bytes, offset, records * mWidth);
+        mCount += records;
+        mMap.putLong(COUNT_OFFSET, mCount);
+        return true;
+    }
+
+    /**
+     * 追加buffer中剩余的所有记录，剩余字节数必须是宽度的整数倍
+     */
+    public synchronized boolean append(ByteBuffer buffer) {
+        checkOpen();
+        int remaining = buffer.remaining();
+        if (remaining == 0 || remaining % mWidth != 0) {
+            throw new IllegalArgumentException("remaining " + remaining + " is not a multiple of " + mWidth);
+        }
+        long end = positionOf(mCount) + remaining;
+        if (!ensureCapacity(end)) {
+            return false;
+        }
+        ByteBuffer target = mMap.duplicate();
+        target.position((int) positionOf(mCount));
+        target.put(buffer);
+        mCount += remaining / mWidth;
+        mMap.putLong(COUNT_OFFSET, mCount);
+        return true;
+    }
+
+    /**
+     * 把映射中修改过的内容刷到磁盘
+     */
+    public synchronized void flush() {
+        checkOpen();
+        mMap.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mMap == null) {
+            return;
+        }
+        try {
+            mMap.force();
+            mMap = null;
+            mChannel.truncate(positionOf(mCount));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            FileIOUtils.closeIO(mRaf);
+        }
+    }
+
+    //----------------------- read -----------------------
+
+    /**
+     * @param reuse 复用的游标，为null时新建
+     * @return 指向第index条记录的游标
+     */
+    public synchronized Record get(int index, Record reuse) {
+        checkOpen();
+        checkIndex(index);
+        Record record = reuse == null ? new Record(mWidth) : reuse;
+        return record.moveTo(mMap, (int) positionOf(index), index);
+    }
+
+    /**
+     * 从第from条开始，读取最多maxRecords条记录到dst中
+     *
+     * @return 实际读取的记录数
+     */
+    public synchronized int read(int from, byte[] dst, int offset, int maxRecords) {
+        checkOpen();
+        int records = Math.min(maxRecords, Math.min(mCount - from, (dst.length - offset) / mWidth));
+        if (from < 0 || records <= 0) {
+            return 0;
+        }
+        ByteBuffer source = mMap.duplicate();
+        source.position((int) positionOf(from));
+        source.get(dst, offset, records * mWidth);
+        return records;
+    }
+
+    /**
+     * 从第from条开始，读取dst剩余空间能放下的整条记录
+     *
+     * @return 实际读取的记录数
+     */
+    public synchronized int read(int from, ByteBuffer dst) {
+        checkOpen();
+        int records = Math.min(mCount - from, dst.remaining() / mWidth);
+        if (from < 0 || records <= 0) {
+            return 0;
+        }
+        ByteBuffer source = mMap.duplicate();
+        source.position((int) positionOf(from));
+        source.limit(source.position() + records * mWidth);
+        dst.put(source);
+        return records;
+    }
+
+    public synchronized void each(GroovyArray.ArrayEach<Record> each) {
+        checkOpen();
+        Record record = new Record(mWidth);
+        for (int i = 0; i < mCount; i++) {
+            each.each(record.moveTo(mMap, (int) positionOf(i), i));
+        }
+    }
+
+    /**
+     * 和{@link GroovyArray#grep(List, GroovyArray.ArrayFilter)}一样，但游标是复用的，所以返回的是索引
+     *
+     * @return 满足条件的记录的索引
+     */
+    public synchronized List<Integer> grep(GroovyArray.ArrayFilter<Record> filter) {
+        checkOpen();
+        List<Integer> indices = new ArrayList<>();
+        Record record = new Record(mWidth);
+        for (int i = 0; i < mCount; i++) {
+            record.moveTo(mMap, (int) positionOf(i), i);
+            if (filter.grep(record)) {
+                indices.add(i);
+            }
+            if (filter.termination(record)) {
+                break;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @return 第一条满足条件的记录的索引，没有则为-1
+     */
+    public synchronized int findIndex(GroovyArray.ArrayFinder<Record> finder) {
+        checkOpen();
+        Record record = new Record(mWidth);
+        for (int i = 0; i < mCount; i++) {
+            if (finder.find(record.moveTo(mMap, (int) positionOf(i), i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long positionOf(int index) {
+        return HEADER_SIZE + (long) index * mWidth;
+    }
+
+    private boolean ensureCapacity(long end) {
+        if (end <= mMap.capacity()) {
+            return true;
+        }
+        if (end > Integer.MAX_VALUE) {
+            return false;
+        }
+        try {
+            mMap.force();
+            mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize(end, mMap.capacity()));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static long mapSize(long required, long current) {
+        long size = Math.max(required, Math.max(current + (current >> 1), MIN_MAP_SIZE));
+        return Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private void checkOpen() {
+        if (mMap == null) {
+            throw new IllegalStateException("record file is closed: " + mFile);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index=" + index + " count=" + mCount);
+        }
+    }
+
+    /**
+     * 指向映射中一条记录的游标，字段按记录内的字节偏移读取
+     */
+    public static final class Record {
+        private final int mWidth;
+        private ByteBuffer mBuffer;
+        private int mBase;
+        private int mIndex;
+
+        private Record(int width) {
+            this.mWidth = width;
+        }
+
+        Record moveTo(ByteBuffer buffer, int base, int index) {
+            this.mBuffer = buffer;
+            this.mBase = base;
+            this.mIndex = index;
+            return this;
+        }
+
+        public int index() {
+            return mIndex;
+        }
+
+        public byte getByte(int offset) {
+            return mBuffer.get(mBase + check(offset, 1));
+        }
+
+        public short getShort(int offset) {
+            return mBuffer.getShort(mBase + check(offset, 2));
+        }
+
+        public int getInt(int offset) {
+            return mBuffer.getInt(mBase + check(offset, 4));
+        }
+
+        public long getLong(int offset) {
+            return mBuffer.getLong(mBase + check(offset, 8));
+        }
+
+        public float getFloat(int offset) {
+            return mBuffer.getFloat(mBase + check(offset, 4));
+        }
+
+        public double getDouble(int offset) {
+            return mBuffer.getDouble(mBase + check(offset, 8));
+        }
+
+        /**
+         * 从记录的offset处复制length个字节到dst
+         */
+        public void getBytes(int offset, byte[] dst, int dstOffset, int length) {
+            ByteBuffer source = mBuffer.duplicate();
+            source.position(mBase + check(offset, length));
+            source.get(dst, dstOffset, length);
+        }
+
+        /**
+         * @return 整条记录的拷贝
+         */
+        public byte[] toBytes() {
+            byte[] bytes = new byte[mWidth];
+            getBytes(0, bytes, 0, mWidth);
+            return bytes;
+        }
+
+        private int check(int offset, int length) {
+            if (offset < 0 || offset + length > mWidth) {
+                throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " width=" + mWidth);
+            }
+            return offset;
+        }
+    }
+}
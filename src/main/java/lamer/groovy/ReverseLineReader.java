@@ -0,0 +1,141 @@
+package lamer.groovy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import lamer.groovy.utils.FileIOUtils;
+
+/**
+ * {@link GroovyFile#eachLineReverse(GroovyArray.ArrayEach)}的实现
+ * <p>
+ * 从文件末尾按块向前读，在字节上找'\n'。UTF-8多字节字符中不会出现'\n'这个字节，
+ * 所以一行的字节凑齐后再整体解码，跨块的多字节字符不会被截断。
+ * 行的划分和{@link GroovyFile#eachLine(GroovyArray.ArrayEach)}一致：按'\n'切分，保留'\r'，去掉末尾的空行。
+ */
+final class ReverseLineReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BLOCK_SIZE = 8 << 10;
+    /**
+     * {@link FileIOUtils#isGzip(byte[])}要求的最短长度：10字节的头、至少2字节的压缩数据和8字节的尾
+     */
+    private static final int GZIP_HEADER = 18;
+
+    private final GroovyArray.ArrayFinder<String> mFinder;
+    /**
+     * 正在拼的一行，从后往前填，内容为[mLineStart, mLine.length)
+     */
+    private byte[] mLine = new byte[256];
+    private int mLineStart = mLine.length;
+    /**
+     * 还没有遇到非空行，这之前的空行都是文件末尾的空行
+     */
+    private boolean mTrailing = true;
+
+    private ReverseLineReader(GroovyArray.ArrayFinder<String> finder) {
+        this.mFinder = finder;
+    }
+
+    /**
+     * 从最后一行往前依次交给finder，finder返回true时停止
+     *
+     * @return finder返回true的那一行，没有找到时为null
+     * @throws IOException 读取失败
+     */
+    static String find(File file, GroovyArray.ArrayFinder<String> finder) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            return new ReverseLineReader(finder).read(raf.getChannel());
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+
+    /**
+     * 只读开头的{@value #GZIP_HEADER}个字节，判断规则和{@link FileIOUtils#isGzip(byte[])}相同，
+     * 和{@link GroovyFile#text()}透明解压时的判断一致
+     *
+     * @return 文件是gzip，不能倒着读
+     */
+    static boolean isGzip(File file) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            if (raf.length() < GZIP_HEADER) {
+                return false;
+            }
+            byte[] head = new byte[GZIP_HEADER];
+            raf.readFully(head);
+            return FileIOUtils.isGzip(head);
+        } finally {
+            FileIOUtils.closeIO(raf);
+        }
+    }
+
+    private String read(FileChannel fc) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        final byte[] block = buffer.array();
+        long position = fc.size();
+        while (position > 0) {
+            final int len = (int) Math.min(BLOCK_SIZE, position);
+            position -= len;
+            buffer.clear();
+            buffer.limit(len);
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer, position + buffer.position()) <= 0) {
+                    throw new IOException("file shrank while reading backward");
+                }
+            }
+            int end = len;
+            for (int i = len - 1; i >= 0; i--) {
+                if (block[i] == '\n') {
+                    prepend(block, i + 1, end - i - 1);
+                    String found = emit();
+                    if (found != null) {
+                        return found;
+                    }
+                    end = i;
+                }
+            }
+            prepend(block, 0, end);
+        }
+        // 第一行前面没有'\n'
+        return emit();
+    }
+
+    private void prepend(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (length > mLineStart) {
+            int used = mLine.length - mLineStart;
+            byte[] grown = new byte[Math.max(mLine.length * 2, used + length)];
+            System.arraycopy(mLine, mLineStart, grown, grown.length - used, used);
+            mLineStart = grown.length - used;
+            mLine = grown;
+        }
+        mLineStart -= length;
+        System.arraycopy(bytes, offset, mLine, mLineStart, length);
+    }
+
+    /**
+     * 把拼好的一行交给finder并清空
+     *
+     * @return finder返回true时为这一行，否则为null
+     */
+    private String emit() {
+        final int length = mLine.length - mLineStart;
+        mLineStart = mLine.length;
+        if (length == 0 && mTrailing) {
+            return null;
+        }
+        mTrailing = false;
+        String line = new String(mLine, mLine.length - length, length, UTF_8);
+        return mFinder.find(line) ? line : null;
+    }
+}
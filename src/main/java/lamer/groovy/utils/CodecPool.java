@@ -0,0 +1,93 @@
+package lamer.groovy.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link Deflater}和{@link Inflater}的对象池
+ * <p>
+ * 二者都持有native的zlib状态（Deflater约256KB），每次读写都新建会给native堆和finalizer带来压力，
+ * 这里按 压缩级别 + 是否nowrap 分别缓存少量实例，用完reset后放回。
+ */
+final class CodecPool {
+
+    private static final int MAX_POOLED = 4;
+
+    // level: -1 ~ 9，每个级别分nowrap和非nowrap两种
+    private static final List<ArrayDeque<Deflater>> sDeflaters = newPools(11 * 2);
+    private static final List<ArrayDeque<Inflater>> sInflaters = newPools(2);
+
+    private CodecPool() {
+        throw new UnsupportedOperationException("u can't instantiate me...");
+    }
+
+    static Deflater obtainDeflater(final int level, final boolean nowrap) {
+        checkLevel(level);
+        int index = deflaterIndex(level, nowrap);
+        synchronized (sDeflaters) {
+            ArrayDeque<Deflater> pool = sDeflaters.get(index);
+            if (!pool.isEmpty()) {
+                return pool.pop();
+            }
+        }
+        return new Deflater(level, nowrap);
+    }
+
+    static void recycle(final Deflater deflater, final int level, final boolean nowrap) {
+        deflater.reset();
+        int index = deflaterIndex(level, nowrap);
+        synchronized (sDeflaters) {
+            ArrayDeque<Deflater> pool = sDeflaters.get(index);
+            if (pool.size() < MAX_POOLED) {
+                pool.push(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    static Inflater obtainInflater(final boolean nowrap) {
+        int index = nowrap ? 1 : 0;
+        synchronized (sInflaters) {
+            ArrayDeque<Inflater> pool = sInflaters.get(index);
+            if (!pool.isEmpty()) {
+                return pool.pop();
+            }
+        }
+        return new Inflater(nowrap);
+    }
+
+    static void recycle(final Inflater inflater, final boolean nowrap) {
+        inflater.reset();
+        int index = nowrap ? 1 : 0;
+        synchronized (sInflaters) {
+            ArrayDeque<Inflater> pool = sInflaters.get(index);
+            if (pool.size() < MAX_POOLED) {
+                pool.push(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    static void checkLevel(final int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+    }
+
+    private static <T> List<ArrayDeque<T>> newPools(final int count) {
+        List<ArrayDeque<T>> pools = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pools.add(new ArrayDeque<T>(MAX_POOLED));
+        }
+        return pools;
+    }
+
+    private static int deflaterIndex(final int level, final boolean nowrap) {
+        return (level + 1) * 2 + (nowrap ? 1 : 0);
+    }
+}
@@ -0,0 +1,133 @@
+package lamer.groovy.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * 校验和与摘要的统一封装，{@link FileIOUtils}在读写的同时计算，避免对数据再遍历一遍
+ * <p>
+ * CRC32和Adler32的结果为4字节大端，其余为对应算法的摘要。实例不是线程安全的。
+ */
+public final class Digest {
+
+    public enum Type {
+        CRC32(null),
+        ADLER32(null),
+        MD5("MD5"),
+        SHA1("SHA-1"),
+        SHA256("SHA-256");
+
+        private final String mAlgorithm;
+
+        Type(String algorithm) {
+            this.mAlgorithm = algorithm;
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Checksum mChecksum;
+    private final MessageDigest mMessageDigest;
+    private byte[] mScratch;
+
+    private Digest(Checksum checksum, MessageDigest messageDigest) {
+        this.mChecksum = checksum;
+        this.mMessageDigest = messageDigest;
+    }
+
+    public static Digest create(Type type) {
+        switch (type) {
+            case CRC32:
+                return new Digest(new CRC32(), null);
+            case ADLER32:
+                return new Digest(new Adler32(), null);
+            default:
+                try {
+                    return new Digest(null, MessageDigest.getInstance(type.mAlgorithm));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+        }
+    }
+
+    public void update(byte[] b, int off, int len) {
+        if (mChecksum != null) {
+            mChecksum.update(b, off, len);
+        } else {
+            mMessageDigest.update(b, off, len);
+        }
+    }
+
+    /**
+     * 消费buffer中position到limit的数据
+     * <p>
+     * 摘要直接交给{@link MessageDigest#update(ByteBuffer)}，是否还要复制由具体实现决定；
+     * Checksum.update(ByteBuffer)要到API 26才有，所以校验和分段复制到一块8KB的中转数组里计算
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int len = buffer.remaining();
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+            buffer.position(buffer.position() + len);
+            return;
+        }
+        if (mMessageDigest != null) {
+            mMessageDigest.update(buffer);
+            return;
+        }
+        if (mScratch == null) {
+            mScratch = new byte[8192];
+        }
+        while (buffer.hasRemaining()) {
+            int len = Math.min(buffer.remaining(), mScratch.length);
+            buffer.get(mScratch, 0, len);
+            update(mScratch, 0, len);
+        }
+    }
+
+    /**
+     * 返回结果并重置，之后可以继续复用
+     */
+    public byte[] finish() {
+        if (mChecksum != null) {
+            long value = mChecksum.getValue();
+            mChecksum.reset();
+            return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+        } else {
+            return mMessageDigest.digest();
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        if (digest == null) {
+            return null;
+        }
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 读取的数据和同一遍计算出的摘要
+     */
+    public static final class Result {
+        public final byte[] bytes;
+        public final byte[] digest;
+
+        Result(byte[] bytes, byte[] digest) {
+            this.bytes = bytes;
+            this.digest = digest;
+        }
+
+        public String hex() {
+            return toHex(digest);
+        }
+    }
+}
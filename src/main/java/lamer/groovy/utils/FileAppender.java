@@ -0,0 +1,497 @@
+package lamer.groovy.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 长期打开的追加写入器，用于高频写日志和事件
+ * <p>
+ * {@link FileIOUtils#writeFileFromString(String, String, boolean)}每次调用都要检查文件、打开流、写入、关闭；
+ * 这里调用方只是把数据拷进内存里的环形缓冲区，由后台线程攒成一批后用一次{@link FileChannel#write(ByteBuffer[])}写出（group commit）。
+ * <p>
+ * 缓冲区写满时{@link #append(byte[], int, int)}会阻塞直到后台线程腾出空间。
+ * 单条数据不会被拆开写，超过缓冲区大小的数据会在已有数据写完后直接写入文件。
+ * <pre>
+ *     FileAppender appender = new FileAppender.Builder(new File(dir, "events.log"))
+ *             .bufferSize(512 * 1024)
+ *             .syncPolicy(FileAppender.SyncPolicy.INTERVAL, 1000)
+ *             .rotate(8 * 1024 * 1024, 3)
+ *             .build();
+ *     appender.appendLine(event);
+ * </pre>
+ */
+public class FileAppender implements Closeable {
+
+    public enum SyncPolicy {
+        /**
+         * 从不主动fsync，交给系统回写
+         */
+        NONE,
+        /**
+         * 距离上次fsync超过指定毫秒数后，在下一批写入后fsync
+         */
+        INTERVAL,
+        /**
+         * 每追加指定条数据后，在下一批写入后fsync
+         */
+        EVERY_N
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final long mFlushIntervalNanos;
+    private final SyncPolicy mSyncPolicy;
+    private final long mSyncValue;
+    private final long mMaxFileSize;
+    private final int mMaxBackups;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotEmpty = mLock.newCondition();
+    private final Condition mNotFull = mLock.newCondition();
+    private final Condition mFlushed = mLock.newCondition();
+    private final byte[] mRing;
+    // 都是累计字节数，实际位置为 % mRing.length
+    private long mHead;
+    private long mTail;
+    private long mFlushedTo;
+    private long mRecords;
+    private boolean mFlushRequested;
+    private boolean mClosed;
+    private boolean mFailed;
+
+    private final Object mChannelLock = new Object();
+    private FileChannel mChannel;
+    /**
+     * 文件达到这个大小时滚动；滚动失败后推迟到再写入mMaxFileSize字节时重试，不会每批都重试
+     */
+    private long mRotateAt;
+    private long mLastSyncNanos;
+    private long mLastSyncRecords;
+
+    private final Thread mFlusher;
+
+    private FileAppender(Builder builder, FileChannel channel) {
+        this.mFile = builder.file;
+        this.mRing = new byte[builder.bufferSize];
+        this.mFlushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.flushIntervalMillis);
+        this.mSyncPolicy = builder.syncPolicy;
+        this.mSyncValue = builder.syncPolicy == SyncPolicy.INTERVAL
+                ? TimeUnit.MILLISECONDS.toNanos(builder.syncValue) : builder.syncValue;
+        this.mMaxFileSize = builder.maxFileSize;
+        this.mMaxBackups = builder.maxBackups;
+        this.mChannel = channel;
+        this.mRotateAt = builder.maxFileSize;
+        this.mLastSyncNanos = System.nanoTime();
+        this.mFlusher = new Thread(this::loop, "FileAppender-" + mFile.getName());
+        this.mFlusher.setDaemon(true);
+        this.mFlusher.start();
+    }
+
+    public boolean appendLine(String line) {
+        if (line == null) {
+            return false;
+        }
+        byte[] bytes = (line + '\n').getBytes(UTF_8);
+        return append(bytes, 0, bytes.length);
+    }
+
+    public boolean append(byte[] bytes) {
+        return bytes != null && append(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return 已关闭或被中断时返回false
+     */
+    public boolean append(byte[] bytes, int offset, int length) {
+        if (bytes == null) {
+            return false;
+        }
+        final int capacity = mRing.length;
+        mLock.lock();
+        try {
+            if (length > capacity) {
+                return appendDirectly(bytes, offset, length);
+            }
+            while (!mClosed && capacity - (mTail - mHead) < length) {
+                mNotFull.await();
+            }
+            if (mClosed) {
+                return false;
+            }
+            int position = (int) (mTail % capacity);
+            int first = Math.min(length, capacity - position);
+            System.arraycopy(bytes, offset, mRing, position, first);
+            System.arraycopy(bytes, offset + first, mRing, 0, length - first);
+            long before = mTail - mHead;
+            mTail += length;
+            mRecords++;
+            // 只在由空变为非空（开始计时）和越过半满时唤醒，其余情况等flush间隔到了再批量写
+            if (before == 0 || (before < capacity / 2 && mTail - mHead >= capacity / 2)) {
+                mNotEmpty.signal();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 等待目前为止追加的数据都写入文件
+     *
+     * @return 写入过程中出现过错误时返回false
+     */
+    public boolean flush() {
+        mLock.lock();
+        try {
+            long target = mTail;
+            mFlushRequested = true;
+            mNotEmpty.signal();
+            while (mFlushedTo < target && mFlusher.isAlive()) {
+                mFlushed.await(100, TimeUnit.MILLISECONDS);
+            }
+            return !mFailed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 写完缓冲区中剩余的数据后关闭文件
+     */
+    @Override
+    public void close() {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mNotEmpty.signal();
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+        try {
+            mFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (mChannelLock) {
+            sync();
+            FileIOUtils.closeIO(mChannel);
+            mChannel = null;
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    //----------------------- flusher -----------------------
+
+    private void loop() {
+        boolean finished = false;
+        try {
+            finished = drainLoop();
+        } finally {
+            if (!finished) {
+                // 后台线程被中断或因为RuntimeException、Error退出，不再有人写出数据，让等待的调用方都返回
+                abort();
+            }
+        }
+    }
+
+    private void abort() {
+        mLock.lock();
+        try {
+            mFailed = true;
+            mClosed = true;
+            mNotFull.signalAll();
+            mFlushed.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+        synchronized (mChannelLock) {
+            FileIOUtils.closeIO(mChannel);
+            mChannel = null;
+        }
+    }
+
+    /**
+     * @return 关闭后正常退出为true，被中断为false
+     */
+    private boolean drainLoop() {
+        final int capacity = mRing.length;
+        final ByteBuffer[] segments = new ByteBuffer[2];
+        for (; ; ) {
+            long head;
+            long tail;
+            long records;
+            mLock.lock();
+            try {
+                // 空闲时不定时唤醒
+                while (!mClosed && !mFlushRequested && mTail == mHead) {
+                    mNotEmpty.await();
+                }
+                long deadline = System.nanoTime() + mFlushIntervalNanos;
+                while (!mClosed && !mFlushRequested && mTail - mHead < capacity / 2) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    mNotEmpty.awaitNanos(remaining);
+                }
+                mFlushRequested = false;
+                head = mHead;
+                tail = mTail;
+                records = mRecords;
+                if (head == tail && mClosed) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                return false;
+            } finally {
+                mLock.unlock();
+            }
+
+            if (head != tail) {
+                // 生产者在head前进之前不会覆盖[head, tail)，可以不持锁直接从环形缓冲区写出
+                int start = (int) (head % capacity);
+                int length = (int) (tail - head);
+                int first = Math.min(length, capacity - start);
+                segments[0] = ByteBuffer.wrap(mRing, start, first);
+                segments[1] = ByteBuffer.wrap(mRing, 0, length - first);
+                boolean ok = write(segments, records);
+                mLock.lock();
+                try {
+                    mHead = tail;
+                    mFailed |= !ok;
+                    mNotFull.signalAll();
+                } finally {
+                    mLock.unlock();
+                }
+            }
+
+            mLock.lock();
+            try {
+                mFlushedTo = tail;
+                mFlushed.signalAll();
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    private boolean write(ByteBuffer[] segments, long records) {
+        synchronized (mChannelLock) {
+            try {
+                long remaining = segments[0].remaining() + segments[1].remaining();
+                while (remaining > 0) {
+                    remaining -= mChannel.write(segments);
+                }
+                syncIfNeeded(records);
+                rotateIfNeeded();
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 持有mLock调用，等缓冲区清空后直接写入，保证和前后数据的顺序
+     */
+    private boolean appendDirectly(byte[] bytes, int offset, int length) throws InterruptedException {
+        while (!mClosed && mTail != mHead) {
+            mFlushRequested = true;
+            mNotEmpty.signal();
+            mNotFull.await();
+        }
+        if (mClosed) {
+            return false;
+        }
+        mRecords++;
+        ByteBuffer[] segments = {ByteBuffer.wrap(bytes, offset, length), ByteBuffer.allocate(0)};
+        boolean ok = write(segments, mRecords);
+        mFailed |= !ok;
+        return ok;
+    }
+
+    private void syncIfNeeded(long records) throws IOException {
+        switch (mSyncPolicy) {
+            case INTERVAL:
+                if (System.nanoTime() - mLastSyncNanos >= mSyncValue) {
+                    sync();
+                }
+                break;
+            case EVERY_N:
+                if (records - mLastSyncRecords >= mSyncValue) {
+                    mLastSyncRecords = records;
+                    sync();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void sync() {
+        if (mChannel == null) {
+            return;
+        }
+        try {
+            mChannel.force(false);
+            mLastSyncNanos = System.nanoTime();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * events.log -> events.log.1 -> events.log.2 ... 超过mMaxBackups的删除
+     * <p>
+     * 新文件打开成功后才关闭旧文件；任何一步失败都继续写旧文件，等再写入mMaxFileSize字节后重试
+     */
+    private void rotateIfNeeded() throws IOException {
+        long size = mChannel.size();
+        if (mMaxFileSize <= 0 || size < mRotateAt) {
+            return;
+        }
+        sync();
+        if (rotate()) {
+            mRotateAt = mMaxFileSize;
+        } else {
+            mRotateAt = size + mMaxFileSize;
+        }
+    }
+
+    private boolean rotate() {
+        if (mMaxBackups == 0) {
+            try {
+                mChannel.truncate(0);
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        String path = mFile.getPath();
+        File oldest = new File(path + "." + mMaxBackups);
+        if (oldest.exists() && !oldest.delete()) {
+            return rotateFailed("failed to delete " + oldest);
+        }
+        for (int i = mMaxBackups - 1; i >= 1; i--) {
+            File backup = new File(path + "." + i);
+            if (backup.exists() && !backup.renameTo(new File(path + "." + (i + 1)))) {
+                return rotateFailed("failed to rename " + backup);
+            }
+        }
+        File first = new File(path + ".1");
+        if (!mFile.renameTo(first)) {
+            return rotateFailed("failed to rename " + mFile);
+        }
+        FileChannel channel;
+        try {
+            channel = new FileOutputStream(mFile, true).getChannel();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // 旧的channel仍然可用，把文件名换回来继续写
+            if (!first.renameTo(mFile)) {
+                rotateFailed("failed to rename " + first + " back");
+            }
+            return false;
+        }
+        FileIOUtils.closeIO(mChannel);
+        mChannel = channel;
+        return true;
+    }
+
+    private static boolean rotateFailed(String message) {
+        new IOException(message).printStackTrace();
+        return false;
+    }
+
+    public static class Builder {
+        private final File file;
+        private int bufferSize = 256 * 1024;
+        private long flushIntervalMillis = 200;
+        private SyncPolicy syncPolicy = SyncPolicy.NONE;
+        private long syncValue;
+        private long maxFileSize;
+        private int maxBackups = 3;
+
+        public Builder(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param bufferSize 环形缓冲区字节数，默认256KB
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = Math.max(bufferSize, 1024);
+            return this;
+        }
+
+        /**
+         * @param millis 数据在缓冲区里最多停留的时间，默认200ms；缓冲区半满时会提前写出
+         */
+        public Builder flushInterval(long millis) {
+            this.flushIntervalMillis = Math.max(millis, 1);
+            return this;
+        }
+
+        /**
+         * @param value {@link SyncPolicy#INTERVAL}为毫秒数，{@link SyncPolicy#EVERY_N}为条数
+         */
+        public Builder syncPolicy(SyncPolicy policy, long value) {
+            this.syncPolicy = policy == null ? SyncPolicy.NONE : policy;
+            this.syncValue = Math.max(value, 1);
+            return this;
+        }
+
+        /**
+         * @param maxFileSize 文件达到该大小后滚动，0为不滚动
+         * @param maxBackups  保留的历史文件数量
+         */
+        public Builder rotate(long maxFileSize, int maxBackups) {
+            this.maxFileSize = maxFileSize;
+            this.maxBackups = Math.max(maxBackups, 0);
+            return this;
+        }
+
+        /**
+         * @return 文件无法创建或打开时返回null
+         */
+        public FileAppender build() {
+            if (file == null) {
+                return null;
+            }
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                return null;
+            }
+            try {
+                return new FileAppender(this, new FileOutputStream(file, true).getChannel());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+}
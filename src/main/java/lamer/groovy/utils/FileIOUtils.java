@@ -3,8 +3,11 @@ package lamer.groovy.utils;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -18,7 +21,13 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
  * <pre>
@@ -38,6 +47,28 @@ public final class FileIOUtils {
 
     private static int sBufferSize = 8192;
 
+    private static volatile IOMetrics sMetrics = IOMetrics.NONE;
+
+    private static int sCompressLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private static final int MAP_WINDOW = 16 << 20;
+
+    /**
+     * copyFile每次transferTo的字节数，也是进度回调的间隔
+     */
+    private static final int COPY_CHUNK = 8 << 20;
+
+    /**
+     * 解压时最多预分配的字节数
+     */
+    private static final int MAX_INFLATE_HINT = 64 << 20;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_FHCRC = 2;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+
     /**
      * 将输入流写入文件
      *
@@ -86,16 +117,21 @@ public final class FileIOUtils {
                                           final InputStream is,
                                           final boolean append) {
         if (!createOrExistsFile(file) || is == null) return false;
+        final long start = startTiming();
         OutputStream os = null;
         try {
             os = new BufferedOutputStream(new FileOutputStream(file, append));
             byte data[] = new byte[sBufferSize];
             int len;
+            long total = 0;
             while ((len = is.read(data, 0, sBufferSize)) != -1) {
                 os.write(data, 0, len);
+                total += len;
             }
+            recordWrite(IOMetrics.Op.WRITE_IS, total, start);
             return true;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_IS, e);
             e.printStackTrace();
             return false;
         } finally {
@@ -151,12 +187,15 @@ public final class FileIOUtils {
                                                      final byte[] bytes,
                                                      final boolean append) {
         if (bytes == null || !createOrExistsFile(file)) return false;
+        final long start = startTiming();
         BufferedOutputStream bos = null;
         try {
             bos = new BufferedOutputStream(new FileOutputStream(file, append));
             bos.write(bytes);
+            recordWrite(IOMetrics.Op.WRITE_BYTES_BY_STREAM, bytes.length, start);
             return true;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_BYTES_BY_STREAM, e);
             e.printStackTrace();
             return false;
         } finally {
@@ -222,14 +261,17 @@ public final class FileIOUtils {
                                                       final boolean append,
                                                       final boolean isForce) {
         if (bytes == null) return false;
+        final long start = startTiming();
         FileChannel fc = null;
         try {
             fc = new FileOutputStream(file, append).getChannel();
             fc.position(fc.size());
             fc.write(ByteBuffer.wrap(bytes));
             if (isForce) fc.force(true);
+            recordWrite(IOMetrics.Op.WRITE_BYTES_BY_CHANNEL, bytes.length, start);
             return true;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_BYTES_BY_CHANNEL, e);
             e.printStackTrace();
             return false;
         } finally {
@@ -295,14 +337,17 @@ public final class FileIOUtils {
                                                   final boolean append,
                                                   final boolean isForce) {
         if (bytes == null || !createOrExistsFile(file)) return false;
+        final long start = startTiming();
         FileChannel fc = null;
         try {
             fc = new FileOutputStream(file, append).getChannel();
             MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_WRITE, fc.size(), bytes.length);
             mbb.put(bytes);
             if (isForce) mbb.force();
+            recordWrite(IOMetrics.Op.WRITE_BYTES_BY_MAP, bytes.length, start);
             return true;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_BYTES_BY_MAP, e);
             e.printStackTrace();
             return false;
         } finally {
@@ -359,12 +404,15 @@ public final class FileIOUtils {
                                               final boolean append) {
         if (file == null || content == null) return false;
         if (!createOrExistsFile(file)) return false;
+        final long start = startTiming();
         BufferedWriter bw = null;
         try {
             bw = new BufferedWriter(new FileWriter(file, append));
             bw.write(content);
+            recordWrite(IOMetrics.Op.WRITE_STRING, content.length(), start);
             return true;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_STRING, e);
             e.printStackTrace();
             return false;
         } finally {
@@ -372,6 +420,385 @@ public final class FileIOUtils {
         }
     }
 
+    /**
+     * 将字节数组以GZIP格式压缩写入文件
+     *
+     * @param filePath 文件路径
+     * @param bytes    字节数组
+     * @return {@code true}: 写入成功<br>{@code false}: 写入失败
+     */
+    public static boolean writeFileFromBytesByGzip(final String filePath, final byte[] bytes) {
+        return writeFileFromBytesByGzip(getFileByPath(filePath), bytes, sCompressLevel);
+    }
+
+    /**
+     * 将字节数组以GZIP格式压缩写入文件
+     *
+     * @param file  文件
+     * @param bytes 字节数组
+     * @return {@code true}: 写入成功<br>{@code false}: 写入失败
+     */
+    public static boolean writeFileFromBytesByGzip(final File file, final byte[] bytes) {
+        return writeFileFromBytesByGzip(file, bytes, sCompressLevel);
+    }
+
+    /**
+     * 将字节数组以GZIP格式压缩写入文件
+     *
+     * @param file  文件
+     * @param bytes 字节数组
+     * @param level 压缩级别，{@link Deflater#DEFAULT_COMPRESSION}或0 ~ 9
+     * @return {@code true}: 写入成功<br>{@code false}: 写入失败
+     */
+    public static boolean writeFileFromBytesByGzip(final File file,
+                                                   final byte[] bytes,
+                                                   final int level) {
+        return writeFileFromBytesByCompress(file, bytes, level, true);
+    }
+
+    /**
+     * 将字节数组以zlib(Deflate)格式压缩写入文件
+     *
+     * @param filePath 文件路径
+     * @param bytes    字节数组
+     * @return {@code true}: 写入成功<br>{@code false}: 写入失败
+     */
+    public static boolean writeFileFromBytesByDeflate(final String filePath, final byte[] bytes) {
+        return writeFileFromBytesByDeflate(getFileByPath(filePath), bytes, sCompressLevel);
+    }
+
+    /**
+     * 将字节数组以zlib(Deflate)格式压缩写入文件
+     *
+     * @param file  文件
+     * @param bytes 字节数组
+     * @param level 压缩级别，{@link Deflater#DEFAULT_COMPRESSION}或0 ~ 9
+     * @return {@code true}: 写入成功<br>{@code false}: 写入失败
+     */
+    public static boolean writeFileFromBytesByDeflate(final File file,
+                                                      final byte[] bytes,
+                                                      final int level) {
+        return writeFileFromBytesByCompress(file, bytes, level, false);
+    }
+
+    private static boolean writeFileFromBytesByCompress(final File file,
+                                                        final byte[] bytes,
+                                                        final int level,
+                                                        final boolean gzip) {
+        CodecPool.checkLevel(level);
+        if (bytes == null || !createOrExistsFile(file)) return false;
+        final IOMetrics.Op op = gzip ? IOMetrics.Op.WRITE_BYTES_BY_GZIP : IOMetrics.Op.WRITE_BYTES_BY_DEFLATE;
+        final long start = startTiming();
+        // GZIP自己写头和尾，所以用nowrap的裸deflate流
+        final Deflater deflater = CodecPool.obtainDeflater(level, gzip);
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(file);
+            byte[] buffer = new byte[sBufferSize];
+            if (gzip) {
+                os.write(new byte[]{(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED,
+                        0, 0, 0, 0, 0, 0, 0});
+            }
+            deflater.setInput(bytes);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buffer);
+                os.write(buffer, 0, len);
+            }
+            if (gzip) {
+                CRC32 crc = new CRC32();
+                crc.update(bytes, 0, bytes.length);
+                writeIntLE(buffer, 0, (int) crc.getValue());
+                writeIntLE(buffer, 4, bytes.length);
+                os.write(buffer, 0, 8);
+            }
+            recordWrite(op, bytes.length, start);
+            return true;
+        } catch (IOException e) {
+            recordError(op, e);
+            e.printStackTrace();
+            return false;
+        } finally {
+            closeIO(os);
+            CodecPool.recycle(deflater, level, gzip);
+        }
+    }
+
+    /**
+     * 将输入流写入文件，同时计算摘要
+     *
+     * @param file   文件
+     * @param is     输入流
+     * @param append 是否追加在文件末
+     * @param type   摘要类型
+     * @return 写入数据的摘要，写入失败返回null
+     */
+    public static byte[] writeFileFromISWithDigest(final File file,
+                                                   final InputStream is,
+                                                   final boolean append,
+                                                   final Digest.Type type) {
+        if (!createOrExistsFile(file) || is == null) return null;
+        final long start = startTiming();
+        final Digest digest = Digest.create(type);
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(file, append);
+            byte data[] = new byte[sBufferSize];
+            int len;
+            long total = 0;
+            while ((len = is.read(data, 0, sBufferSize)) != -1) {
+                digest.update(data, 0, len);
+                os.write(data, 0, len);
+                total += len;
+            }
+            recordWrite(IOMetrics.Op.WRITE_IS_WITH_DIGEST, total, start);
+            return digest.finish();
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_IS_WITH_DIGEST, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(is, os);
+        }
+    }
+
+    /**
+     * 将字节数组写入文件，同时计算摘要
+     *
+     * @param filePath 文件路径
+     * @param bytes    字节数组
+     * @param type     摘要类型
+     * @return 写入数据的摘要，写入失败返回null
+     */
+    public static byte[] writeFileFromBytesWithDigest(final String filePath,
+                                                      final byte[] bytes,
+                                                      final Digest.Type type) {
+        return writeFileFromBytesWithDigest(getFileByPath(filePath), bytes, false, false, type);
+    }
+
+    /**
+     * 将字节数组写入文件，同时计算摘要
+     * <p>
+     * 按缓冲区大小分块，每块先计算摘要再写入，数据只从内存里过一遍
+     *
+     * @param file    文件
+     * @param bytes   字节数组
+     * @param append  是否追加在文件末
+     * @param isForce 是否写入文件
+     * @param type    摘要类型
+     * @return 写入数据的摘要，写入失败返回null
+     */
+    public static byte[] writeFileFromBytesWithDigest(final File file,
+                                                      final byte[] bytes,
+                                                      final boolean append,
+                                                      final boolean isForce,
+                                                      final Digest.Type type) {
+        if (bytes == null || !createOrExistsFile(file)) return null;
+        final long start = startTiming();
+        final Digest digest = Digest.create(type);
+        FileChannel fc = null;
+        try {
+            fc = new FileOutputStream(file, append).getChannel();
+            int offset = 0;
+            while (offset < bytes.length) {
+                int len = Math.min(sBufferSize, bytes.length - offset);
+                digest.update(bytes, offset, len);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, len);
+                while (buffer.hasRemaining()) {
+                    fc.write(buffer);
+                }
+                offset += len;
+            }
+            if (isForce) fc.force(true);
+            recordWrite(IOMetrics.Op.WRITE_BYTES_WITH_DIGEST, bytes.length, start);
+            return digest.finish();
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.WRITE_BYTES_WITH_DIGEST, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(fc);
+        }
+    }
+
+    /**
+     * 复制文件
+     *
+     * @param srcPath  源文件路径
+     * @param destPath 目标文件路径
+     * @return {@code true}: 复制成功<br>{@code false}: 复制失败
+     */
+    public static boolean copyFile(final String srcPath, final String destPath) {
+        return copyFile(getFileByPath(srcPath), getFileByPath(destPath), null);
+    }
+
+    /**
+     * 复制文件
+     *
+     * @param src  源文件
+     * @param dest 目标文件
+     * @return {@code true}: 复制成功<br>{@code false}: 复制失败
+     */
+    public static boolean copyFile(final File src, final File dest) {
+        return copyFile(src, dest, null);
+    }
+
+    /**
+     * 复制文件，目标文件已存在时覆盖
+     * <p>
+     * 用{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}分块复制，
+     * 数据在内核中直接拷贝，不经过Java堆；复制完成后保留源文件的修改时间
+     *
+     * @param src      源文件
+     * @param dest     目标文件
+     * @param listener 每复制完一块回调一次，可以为null
+     * @return {@code true}: 复制成功<br>{@code false}: 复制失败
+     */
+    public static boolean copyFile(final File src, final File dest, final OnProgressListener listener) {
+        if (src == null || dest == null || !src.isFile()) return false;
+        if (isSameFile(src, dest)) return false;
+        if (!createOrExistsDir(dest.getAbsoluteFile().getParentFile())) return false;
+        final long start = startTiming();
+        FileChannel in = null;
+        FileChannel out = null;
+        try {
+            in = new FileInputStream(src).getChannel();
+            out = new FileOutputStream(dest).getChannel();
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                // transferTo可能少传，需要循环；返回0说明源文件被截短了
+                long len = in.transferTo(position, Math.min(COPY_CHUNK, size - position), out);
+                if (len <= 0) break;
+                position += len;
+                if (listener != null) listener.onProgress(src, position, size);
+            }
+            if (position < size) throw new EOFException(src + " shrank while copying");
+            if (size == 0 && listener != null) listener.onProgress(src, 0, 0);
+            closeIO(out);
+            out = null;
+            dest.setLastModified(src.lastModified());
+            recordWrite(IOMetrics.Op.COPY, size, start);
+            return true;
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.COPY, e);
+            e.printStackTrace();
+            return false;
+        } finally {
+            closeIO(in, out);
+        }
+    }
+
+    /**
+     * 移动文件
+     *
+     * @param srcPath  源文件路径
+     * @param destPath 目标文件路径
+     * @return {@code true}: 移动成功<br>{@code false}: 移动失败
+     */
+    public static boolean moveFile(final String srcPath, final String destPath) {
+        return moveFile(getFileByPath(srcPath), getFileByPath(destPath), null);
+    }
+
+    /**
+     * 移动文件
+     *
+     * @param src  源文件
+     * @param dest 目标文件
+     * @return {@code true}: 移动成功<br>{@code false}: 移动失败
+     */
+    public static boolean moveFile(final File src, final File dest) {
+        return moveFile(src, dest, null);
+    }
+
+    /**
+     * 移动文件，目标文件已存在时覆盖
+     * <p>
+     * 同一个文件系统内直接rename，不复制数据；rename失败（例如跨分区）时用{@link #copyFile(File, File, OnProgressListener)}复制后删除源文件
+     *
+     * @param src      源文件
+     * @param dest     目标文件
+     * @param listener 需要复制时的进度回调，rename成功时不会回调，可以为null
+     * @return {@code true}: 移动成功<br>{@code false}: 移动失败
+     */
+    public static boolean moveFile(final File src, final File dest, final OnProgressListener listener) {
+        if (src == null || dest == null || !src.isFile()) return false;
+        if (isSameFile(src, dest)) return false;
+        if (!createOrExistsDir(dest.getAbsoluteFile().getParentFile())) return false;
+        final long start = startTiming();
+        final long size = src.length();
+        if (src.renameTo(dest)) {
+            recordWrite(IOMetrics.Op.MOVE, size, start);
+            return true;
+        }
+        if (!copyFile(src, dest, listener)) return false;
+        if (!src.delete()) {
+            recordError(IOMetrics.Op.MOVE, new IOException("failed to delete " + src));
+            return false;
+        }
+        recordWrite(IOMetrics.Op.MOVE, size, start);
+        return true;
+    }
+
+    /**
+     * 判断src和dest是否指向同一个文件，复制到自己身上会先把源文件截断
+     * <p>
+     * 规范路径相同（./、../、符号链接）时为同一个文件；有java.nio.file（API 26以上或JVM）时再用
+     * {@link java.nio.file.Files#isSameFile}识别硬链接，没有时dest已存在且长度、修改时间都和src相同也当作同一个文件
+     *
+     * @param src  源文件
+     * @param dest 目标文件
+     * @return {@code true}: 是同一个文件或无法判断<br>{@code false}: 不是
+     */
+    private static boolean isSameFile(final File src, final File dest) {
+        try {
+            if (src.getCanonicalFile().equals(dest.getCanonicalFile())) return true;
+        } catch (IOException e) {
+            return true;
+        }
+        if (!dest.exists()) return false;
+        if (NioFiles.AVAILABLE) {
+            try {
+                return NioFiles.isSameFile(src, dest);
+            } catch (IOException e) {
+                return true;
+            }
+        }
+        return dest.length() == src.length() && dest.lastModified() == src.lastModified();
+    }
+
+    /**
+     * 单独放在一个类里，没有java.nio.file的系统上不会加载到Files
+     */
+    private static final class NioFiles {
+        static final boolean AVAILABLE = isAvailable();
+
+        private static boolean isAvailable() {
+            try {
+                Class.forName("java.nio.file.Files");
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
+        static boolean isSameFile(final File a, final File b) throws IOException {
+            return java.nio.file.Files.isSameFile(a.toPath(), b.toPath());
+        }
+    }
+
+    /**
+     * 复制进度回调
+     */
+    public interface OnProgressListener {
+        /**
+         * @param file   正在复制的源文件
+         * @param copied 已复制的字节数
+         * @param total  总字节数
+         */
+        void onProgress(File file, long copied, long total);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // the divide line of write and read
     ///////////////////////////////////////////////////////////////////////////
@@ -473,6 +900,7 @@ public final class FileIOUtils {
                                              final String charsetName) {
         if (!isFileExists(file)) return null;
         if (st > end) return null;
+        final long start = startTiming();
         BufferedReader reader = null;
         try {
             String line;
@@ -490,8 +918,72 @@ public final class FileIOUtils {
                 if (st <= curLine && curLine <= end) list.add(line);
                 ++curLine;
             }
+            recordRead(IOMetrics.Op.READ_LIST, file, start);
             return list;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_LIST, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(reader);
+        }
+    }
+
+    /**
+     * 读取文件到紧凑的行列表中，所有行共用一个数组，见{@link PackedLines}
+     *
+     * @param filePath 文件路径
+     * @return 行列表
+     */
+    public static PackedLines readFile2PackedList(final String filePath) {
+        return readFile2PackedList(getFileByPath(filePath), null);
+    }
+
+    /**
+     * 读取文件到紧凑的行列表中，所有行共用一个数组，见{@link PackedLines}
+     *
+     * @param filePath    文件路径
+     * @param charsetName 编码格式
+     * @return 行列表
+     */
+    public static PackedLines readFile2PackedList(final String filePath, final String charsetName) {
+        return readFile2PackedList(getFileByPath(filePath), charsetName);
+    }
+
+    /**
+     * 读取文件到紧凑的行列表中，所有行共用一个数组，见{@link PackedLines}
+     *
+     * @param file 文件
+     * @return 行列表
+     */
+    public static PackedLines readFile2PackedList(final File file) {
+        return readFile2PackedList(file, null);
+    }
+
+    /**
+     * 读取文件到紧凑的行列表中，所有行共用一个数组，见{@link PackedLines}
+     * <p>
+     * 行的划分和{@link #readFile2List(File, String)}相同，几百万行的文件内存占用只有它的几分之一
+     *
+     * @param file        文件
+     * @param charsetName 编码格式
+     * @return 行列表
+     */
+    public static PackedLines readFile2PackedList(final File file, final String charsetName) {
+        if (!isFileExists(file)) return null;
+        final long start = startTiming();
+        InputStreamReader reader = null;
+        try {
+            if (isSpace(charsetName)) {
+                reader = new InputStreamReader(new FileInputStream(file));
+            } else {
+                reader = new InputStreamReader(new FileInputStream(file), charsetName);
+            }
+            PackedLines lines = PackedLines.read(reader);
+            recordRead(IOMetrics.Op.READ_PACKED_LIST, file, start);
+            return lines;
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_PACKED_LIST, e);
             e.printStackTrace();
             return null;
         } finally {
@@ -539,6 +1031,7 @@ public final class FileIOUtils {
      */
     public static String readFile2String(final File file, final String charsetName) {
         if (!isFileExists(file)) return null;
+        final long start = startTiming();
         BufferedReader reader = null;
         try {
             StringBuilder sb = new StringBuilder();
@@ -556,8 +1049,10 @@ public final class FileIOUtils {
                     sb.append(LINE_SEP).append(line);
                 }
             }
+            recordRead(IOMetrics.Op.READ_STRING, file, start);
             return sb.toString();
         } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_STRING, e);
             e.printStackTrace();
             return null;
         } finally {
@@ -583,6 +1078,7 @@ public final class FileIOUtils {
      */
     public static byte[] readFile2BytesByStream(final File file) {
         if (!isFileExists(file)) return null;
+        final long start = startTiming();
         FileInputStream fis = null;
         ByteArrayOutputStream os = null;
         try {
@@ -593,8 +1089,10 @@ public final class FileIOUtils {
             while ((len = fis.read(b, 0, sBufferSize)) != -1) {
                 os.write(b, 0, len);
             }
+            recordRead(IOMetrics.Op.READ_BYTES_BY_STREAM, os.size(), start);
             return os.toByteArray();
         } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_BYTES_BY_STREAM, e);
             e.printStackTrace();
             return null;
         } finally {
@@ -620,6 +1118,7 @@ public final class FileIOUtils {
      */
     public static byte[] readFile2BytesByChannel(final File file) {
         if (!isFileExists(file)) return null;
+        final long start = startTiming();
         FileChannel fc = null;
         try {
             fc = new RandomAccessFile(file, "r").getChannel();
@@ -627,8 +1126,10 @@ public final class FileIOUtils {
             while (true) {
                 if (!((fc.read(byteBuffer)) > 0)) break;
             }
+            recordRead(IOMetrics.Op.READ_BYTES_BY_CHANNEL, byteBuffer.position(), start);
             return byteBuffer.array();
         } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_BYTES_BY_CHANNEL, e);
             e.printStackTrace();
             return null;
         } finally {
@@ -654,6 +1155,7 @@ public final class FileIOUtils {
      */
     public static byte[] readFile2BytesByMap(final File file) {
         if (!isFileExists(file)) return null;
+        final long start = startTiming();
         FileChannel fc = null;
         try {
             fc = new RandomAccessFile(file, "r").getChannel();
@@ -661,8 +1163,251 @@ public final class FileIOUtils {
             MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, 0, size).load();
             byte[] result = new byte[size];
             mbb.get(result, 0, size);
+            recordRead(IOMetrics.Op.READ_BYTES_BY_MAP, size, start);
+            return result;
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_BYTES_BY_MAP, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(fc);
+        }
+    }
+
+    /**
+     * 读取文件到堆外的直接缓冲区中
+     *
+     * @param filePath 文件路径
+     * @return position为0、limit为文件长度的直接缓冲区
+     */
+    public static ByteBuffer readFile2BufferByDirect(final String filePath) {
+        return readFile2BufferByDirect(getFileByPath(filePath));
+    }
+
+    /**
+     * 读取文件到堆外的直接缓冲区中，数据不经过Java堆
+     *
+     * @param file 文件
+     * @return position为0、limit为文件长度的直接缓冲区
+     */
+    public static ByteBuffer readFile2BufferByDirect(final File file) {
+        if (!isFileExists(file)) return null;
+        final long start = startTiming();
+        FileChannel fc = null;
+        try {
+            fc = new RandomAccessFile(file, "r").getChannel();
+            ByteBuffer result = ByteBuffer.allocateDirect((int) fc.size());
+            while (result.hasRemaining()) {
+                if (fc.read(result) <= 0) break;
+            }
+            result.flip();
+            recordRead(IOMetrics.Op.READ_BUFFER_BY_DIRECT, result.limit(), start);
             return result;
         } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_BUFFER_BY_DIRECT, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(fc);
+        }
+    }
+
+    /**
+     * 只读映射文件
+     *
+     * @param filePath 文件路径
+     * @return 只读的映射
+     */
+    public static MappedByteBuffer readFile2BufferByMap(final String filePath) {
+        return readFile2BufferByMap(getFileByPath(filePath));
+    }
+
+    /**
+     * 只读映射文件，不复制数据，关闭文件后映射仍然有效
+     * <p>
+     * 映射期间文件被截短时，访问超出部分会导致进程收到SIGBUS，只用于不会被原地改写的文件
+     *
+     * @param file 文件
+     * @return 只读的映射
+     */
+    public static MappedByteBuffer readFile2BufferByMap(final File file) {
+        if (!isFileExists(file)) return null;
+        final long start = startTiming();
+        FileChannel fc = null;
+        try {
+            fc = new RandomAccessFile(file, "r").getChannel();
+            MappedByteBuffer result = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            recordRead(IOMetrics.Op.READ_BUFFER_BY_MAP, result.limit(), start);
+            return result;
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_BUFFER_BY_MAP, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(fc);
+        }
+    }
+
+    /**
+     * 读取GZIP压缩的文件并解压到字节数组中
+     *
+     * @param filePath 文件路径
+     * @return 解压后的字节数组
+     */
+    public static byte[] readFile2BytesByGzip(final String filePath) {
+        return readFile2BytesByGzip(getFileByPath(filePath));
+    }
+
+    /**
+     * 读取GZIP压缩的文件并解压到字节数组中
+     * <p>
+     * 输出数组按GZIP尾部记录的原始长度一次分配，只支持单个member的GZIP文件
+     *
+     * @param file 文件
+     * @return 解压后的字节数组
+     */
+    public static byte[] readFile2BytesByGzip(final File file) {
+        return readFile2BytesByCompress(file, true);
+    }
+
+    /**
+     * 读取zlib(Deflate)压缩的文件并解压到字节数组中
+     *
+     * @param filePath 文件路径
+     * @return 解压后的字节数组
+     */
+    public static byte[] readFile2BytesByDeflate(final String filePath) {
+        return readFile2BytesByDeflate(getFileByPath(filePath));
+    }
+
+    /**
+     * 读取zlib(Deflate)压缩的文件并解压到字节数组中
+     *
+     * @param file 文件
+     * @return 解压后的字节数组
+     */
+    public static byte[] readFile2BytesByDeflate(final File file) {
+        return readFile2BytesByCompress(file, false);
+    }
+
+    private static byte[] readFile2BytesByCompress(final File file, final boolean gzip) {
+        if (!isFileExists(file)) return null;
+        final IOMetrics.Op op = gzip ? IOMetrics.Op.READ_BYTES_BY_GZIP : IOMetrics.Op.READ_BYTES_BY_DEFLATE;
+        final long start = startTiming();
+        RandomAccessFile raf = null;
+        InputStream is = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            long length = raf.length();
+            long isize = -1;
+            if (gzip && length >= 18) {
+                byte[] trailer = new byte[4];
+                raf.seek(length - 4);
+                raf.readFully(trailer);
+                isize = readIntLE(trailer, 0) & 0xffffffffL;
+                raf.seek(0);
+            }
+            final int sizeHint = inflateSizeHint(isize, length);
+            is = new BufferedInputStream(new FileInputStream(raf.getFD()), sBufferSize);
+            byte[] result = inflate(is, gzip, sizeHint);
+            recordRead(op, result.length, start);
+            return result;
+        } catch (IOException e) {
+            recordError(op, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(is, raf);
+        }
+    }
+
+    /**
+     * 读取文件到字节数组中，同时计算摘要
+     *
+     * @param filePath 文件路径
+     * @param type     摘要类型
+     * @return 字节数组和摘要，读取失败返回null
+     */
+    public static Digest.Result readFile2BytesWithDigest(final String filePath, final Digest.Type type) {
+        return readFile2BytesWithDigest(getFileByPath(filePath), type);
+    }
+
+    /**
+     * 读取文件到字节数组中，同时计算摘要
+     * <p>
+     * 按缓冲区大小分块读取，每块读完趁还在CPU缓存里计算摘要
+     *
+     * @param file 文件
+     * @param type 摘要类型
+     * @return 字节数组和摘要，读取失败返回null
+     */
+    public static Digest.Result readFile2BytesWithDigest(final File file, final Digest.Type type) {
+        if (!isFileExists(file)) return null;
+        final long start = startTiming();
+        final Digest digest = Digest.create(type);
+        FileChannel fc = null;
+        try {
+            fc = new RandomAccessFile(file, "r").getChannel();
+            byte[] result = new byte[(int) fc.size()];
+            int offset = 0;
+            while (offset < result.length) {
+                int len = fc.read(ByteBuffer.wrap(result, offset, Math.min(sBufferSize, result.length - offset)));
+                if (len <= 0) break;
+                digest.update(result, offset, len);
+                offset += len;
+            }
+            if (offset < result.length) result = Arrays.copyOf(result, offset);
+            recordRead(IOMetrics.Op.READ_BYTES_WITH_DIGEST, offset, start);
+            return new Digest.Result(result, digest.finish());
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.READ_BYTES_WITH_DIGEST, e);
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeIO(fc);
+        }
+    }
+
+    /**
+     * 计算文件的摘要
+     *
+     * @param filePath 文件路径
+     * @param type     摘要类型
+     * @return 摘要，读取失败返回null
+     */
+    public static byte[] digest(final String filePath, final Digest.Type type) {
+        return digest(getFileByPath(filePath), type);
+    }
+
+    /**
+     * 计算文件的摘要
+     * <p>
+     * 按{@value #MAP_WINDOW}字节的窗口映射文件，逐个窗口交给{@link Digest#update(ByteBuffer)}，
+     * 不会把整个文件读进Java堆；校验和以及部分摘要实现仍会分段复制到小的中转数组里。
+     * 映射没有办法主动释放，要等GC回收
+     *
+     * @param file 文件
+     * @param type 摘要类型
+     * @return 摘要，读取失败返回null
+     */
+    public static byte[] digest(final File file, final Digest.Type type) {
+        if (!isFileExists(file)) return null;
+        final long start = startTiming();
+        final Digest digest = Digest.create(type);
+        FileChannel fc = null;
+        try {
+            fc = new RandomAccessFile(file, "r").getChannel();
+            final long size = fc.size();
+            long position = 0;
+            while (position < size) {
+                long len = Math.min(MAP_WINDOW, size - position);
+                digest.update(fc.map(FileChannel.MapMode.READ_ONLY, position, len));
+                position += len;
+            }
+            recordRead(IOMetrics.Op.DIGEST, size, start);
+            return digest.finish();
+        } catch (IOException e) {
+            recordError(IOMetrics.Op.DIGEST, e);
             e.printStackTrace();
             return null;
         } finally {
@@ -670,6 +1415,179 @@ public final class FileIOUtils {
         }
     }
 
+    /**
+     * 判断字节数组是否以GZIP的magic开头
+     *
+     * @param bytes 字节数组
+     * @return {@code true}: 是<br>{@code false}: 否
+     */
+    public static boolean isGzip(final byte[] bytes) {
+        return bytes != null && bytes.length >= 18
+                && (bytes[0] & 0xff) == (GZIP_MAGIC & 0xff)
+                && (bytes[1] & 0xff) == (GZIP_MAGIC >> 8)
+                && bytes[2] == Deflater.DEFLATED;
+    }
+
+    /**
+     * 判断缓冲区从position开始是否以GZIP的magic开头，规则和{@link #isGzip(byte[])}相同，不改变position
+     *
+     * @param buffer 缓冲区
+     * @return {@code true}: 是<br>{@code false}: 否
+     */
+    public static boolean isGzip(final ByteBuffer buffer) {
+        if (buffer == null || buffer.remaining() < 18) return false;
+        final int p = buffer.position();
+        return (buffer.get(p) & 0xff) == (GZIP_MAGIC & 0xff)
+                && (buffer.get(p + 1) & 0xff) == (GZIP_MAGIC >> 8)
+                && buffer.get(p + 2) == Deflater.DEFLATED;
+    }
+
+    /**
+     * 解压内存中GZIP格式的字节数组
+     *
+     * @param bytes GZIP格式的字节数组
+     * @return 解压后的字节数组，格式不对时返回null
+     */
+    public static byte[] gunzip(final byte[] bytes) {
+        if (!isGzip(bytes)) return null;
+        final int sizeHint = inflateSizeHint(readIntLE(bytes, bytes.length - 4) & 0xffffffffL, bytes.length);
+        try {
+            return inflate(new ByteArrayInputStream(bytes), true, sizeHint);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 设置GZIP和Deflate写入时默认的压缩级别
+     *
+     * @param level {@link Deflater#DEFAULT_COMPRESSION}或0 ~ 9
+     */
+    public static void setCompressLevel(final int level) {
+        CodecPool.checkLevel(level);
+        sCompressLevel = level;
+    }
+
+    /**
+     * 解压时预分配的长度：GZIP尾部的ISIZE可能损坏或被伪造，不能直接信任。
+     * deflate的压缩率不超过1032:1，再限制在{@link #MAX_INFLATE_HINT}以内，更大的内容在解压过程中扩容
+     *
+     * @param isize            GZIP尾部记录的原始长度，未知时为-1
+     * @param compressedLength 压缩数据的长度
+     */
+    private static int inflateSizeHint(final long isize, final long compressedLength) {
+        long hint = isize >= 0 ? isize : compressedLength * 4;
+        hint = Math.min(hint, compressedLength * 1032);
+        return (int) Math.min(hint, MAX_INFLATE_HINT);
+    }
+
+    private static byte[] inflate(final InputStream is,
+                                  final boolean gzip,
+                                  final int sizeHint) throws IOException {
+        if (gzip) readGzipHeader(is);
+        final Inflater inflater = CodecPool.obtainInflater(gzip);
+        try {
+            byte[] in = new byte[sBufferSize];
+            int inLen = 0;
+            byte[] out = new byte[Math.max(sizeHint, 1)];
+            int outLen = 0;
+            byte[] probe = null;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    inLen = is.read(in, 0, in.length);
+                    if (inLen == -1) throw new EOFException("Unexpected end of compressed data");
+                    inflater.setInput(in, 0, inLen);
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Compressed data needs dictionary");
+                }
+                if (outLen == out.length) {
+                    // 按原始长度分配时刚好写满，用1字节探测是否已经结束，避免多扩容一次
+                    if (probe == null) probe = new byte[1];
+                    if (inflater.inflate(probe) == 0) continue;
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, out.length + sBufferSize));
+                    out[outLen++] = probe[0];
+                }
+                outLen += inflater.inflate(out, outLen, out.length - outLen);
+            }
+            if (gzip) {
+                byte[] trailer = new byte[8];
+                int remaining = inflater.getRemaining();
+                int copied = Math.min(remaining, 8);
+                System.arraycopy(in, inLen - remaining, trailer, 0, copied);
+                while (copied < 8) {
+                    int len = is.read(trailer, copied, 8 - copied);
+                    if (len == -1) throw new EOFException("Unexpected end of gzip trailer");
+                    copied += len;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(out, 0, outLen);
+                // ISIZE是原始长度 mod 2^32
+                if (readIntLE(trailer, 0) != (int) crc.getValue() || readIntLE(trailer, 4) != outLen) {
+                    throw new ZipException("Corrupt gzip trailer");
+                }
+            }
+            return outLen == out.length ? out : Arrays.copyOf(out, outLen);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            CodecPool.recycle(inflater, gzip);
+        }
+    }
+
+    private static void readGzipHeader(final InputStream is) throws IOException {
+        byte[] header = new byte[10];
+        readFully(is, header, 10);
+        if ((header[0] & 0xff | (header[1] & 0xff) << 8) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (header[2] != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = header[3] & 0xff;
+        if ((flags & GZIP_FEXTRA) != 0) {
+            readFully(is, header, 2);
+            skipFully(is, header[0] & 0xff | (header[1] & 0xff) << 8);
+        }
+        if ((flags & GZIP_FNAME) != 0) skipZeroTerminated(is);
+        if ((flags & GZIP_FCOMMENT) != 0) skipZeroTerminated(is);
+        if ((flags & GZIP_FHCRC) != 0) skipFully(is, 2);
+    }
+
+    private static void readFully(final InputStream is, final byte[] b, final int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int count = is.read(b, n, len - n);
+            if (count == -1) throw new EOFException();
+            n += count;
+        }
+    }
+
+    private static void skipFully(final InputStream is, final int len) throws IOException {
+        for (int i = 0; i < len; i++) {
+            if (is.read() == -1) throw new EOFException();
+        }
+    }
+
+    private static void skipZeroTerminated(final InputStream is) throws IOException {
+        int b;
+        do {
+            b = is.read();
+            if (b == -1) throw new EOFException();
+        } while (b != 0);
+    }
+
+    private static int readIntLE(final byte[] b, final int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+
+    private static void writeIntLE(final byte[] b, final int off, final int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+
     /**
      * 设置缓冲区尺寸
      *
@@ -679,6 +1597,42 @@ public final class FileIOUtils {
         sBufferSize = bufferSize;
     }
 
+    /**
+     * 设置读写指标回调
+     *
+     * @param metrics 为null时恢复为{@link IOMetrics#NONE}
+     */
+    public static void setMetrics(final IOMetrics metrics) {
+        sMetrics = metrics == null ? IOMetrics.NONE : metrics;
+    }
+
+    public static IOMetrics getMetrics() {
+        return sMetrics;
+    }
+
+    /**
+     * @return 未设置指标回调时为0，不调用{@link System#nanoTime()}
+     */
+    private static long startTiming() {
+        return sMetrics == IOMetrics.NONE ? 0 : System.nanoTime();
+    }
+
+    private static void recordRead(final IOMetrics.Op op, final long bytes, final long start) {
+        if (start != 0) sMetrics.onRead(op, bytes, System.nanoTime() - start);
+    }
+
+    private static void recordRead(final IOMetrics.Op op, final File file, final long start) {
+        if (start != 0) sMetrics.onRead(op, file.length(), System.nanoTime() - start);
+    }
+
+    private static void recordWrite(final IOMetrics.Op op, final long bytes, final long start) {
+        if (start != 0) sMetrics.onWrite(op, bytes, System.nanoTime() - start);
+    }
+
+    private static void recordError(final IOMetrics.Op op, final Throwable e) {
+        sMetrics.onError(op, e);
+    }
+
     private static File getFileByPath(final String filePath) {
         return isSpace(filePath) ? null : new File(filePath);
     }
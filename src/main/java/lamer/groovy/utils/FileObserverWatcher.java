@@ -0,0 +1,63 @@
+package lamer.groovy.utils;
+
+import android.os.FileObserver;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * 基于{@link FileObserver}(inotify)的{@link FileWatcher}，所有API级别可用
+ * <p>
+ * 监听文件时实际监听的是它的父目录，这样文件被删除后重建、或者通过rename原子替换时也能收到通知。
+ * {@link FileObserver}被回收后会停止监听，所以需要持有{@link #watch(File, Runnable)}返回的对象。
+ */
+public class FileObserverWatcher implements FileWatcher {
+
+    private static final int MASK = FileObserver.MODIFY
+            | FileObserver.ATTRIB
+            | FileObserver.CLOSE_WRITE
+            | FileObserver.MOVED_FROM
+            | FileObserver.MOVED_TO
+            | FileObserver.CREATE
+            | FileObserver.DELETE
+            | FileObserver.DELETE_SELF
+            | FileObserver.MOVE_SELF;
+
+    @Override
+    public Closeable watch(final File file, final Runnable onChange) {
+        if (file == null || onChange == null) {
+            return null;
+        }
+
+        final File dir;
+        final String name;
+        if (file.isDirectory()) {
+            dir = file;
+            name = null;
+        } else {
+            dir = file.getAbsoluteFile().getParentFile();
+            name = file.getName();
+        }
+        if (dir == null) {
+            return null;
+        }
+
+        final FileObserver observer = new FileObserver(dir.getPath(), MASK) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (name == null
+                        || path == null
+                        || name.equals(path)) {
+                    onChange.run();
+                }
+            }
+        };
+        observer.startWatching();
+        return new Closeable() {
+            @Override
+            public void close() {
+                observer.stopWatching();
+            }
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package lamer.groovy.utils;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * 监听文件或目录的变化，用于让{@link lamer.groovy.GroovyFile}的缓存在文件被修改后自动失效
+ * <p>
+ * Android上使用{@link FileObserverWatcher}；API 26以上或JVM上也可以使用基于
+ * {@link java.nio.file.WatchService}的{@link WatchServiceWatcher}。
+ */
+public interface FileWatcher {
+
+    /**
+     * @param file     文件时监听它本身的创建、修改、删除和重命名；目录时监听目录下的任何变化
+     * @param onChange 在监听线程上回调，需要足够轻量
+     * @return 关闭后停止监听，失败返回null
+     */
+    Closeable watch(File file, Runnable onChange);
+}
@@ -0,0 +1,83 @@
+package lamer.groovy.utils;
+
+/**
+ * {@link FileIOUtils}的读写指标回调，通过{@link FileIOUtils#setMetrics(IOMetrics)}注册
+ * <p>
+ * 默认是{@link #NONE}，此时读写路径上不会调用{@link System#nanoTime()}，也不会回调任何方法。
+ * 回调会在读写所在的线程上同步执行，实现需要线程安全并且足够轻量，可以直接使用{@link IOStats}。
+ */
+public interface IOMetrics {
+
+    enum Op {
+        WRITE_IS,
+        WRITE_BYTES_BY_STREAM,
+        WRITE_BYTES_BY_CHANNEL,
+        WRITE_BYTES_BY_MAP,
+        WRITE_STRING,
+        WRITE_BYTES_BY_GZIP,
+        WRITE_BYTES_BY_DEFLATE,
+        WRITE_IS_WITH_DIGEST,
+        WRITE_BYTES_WITH_DIGEST,
+        COPY,
+        MOVE,
+        READ_LIST,
+        READ_PACKED_LIST,
+        READ_STRING,
+        READ_BYTES_BY_STREAM,
+        READ_BYTES_BY_CHANNEL,
+        READ_BYTES_BY_MAP,
+        READ_BUFFER_BY_DIRECT,
+        READ_BUFFER_BY_MAP,
+        READ_BYTES_BY_GZIP,
+        READ_BYTES_BY_DEFLATE,
+        READ_BYTES_WITH_DIGEST,
+        DIGEST
+    }
+
+    /**
+     * @param bytes 读取的字节数，{@link Op#READ_LIST}、{@link Op#READ_PACKED_LIST}和{@link Op#READ_STRING}为文件长度，压缩格式为解压后的长度
+     * @param nanos 耗时
+     */
+    void onRead(Op op, long bytes, long nanos);
+
+    /**
+     * @param bytes 写入的字节数，{@link Op#WRITE_STRING}为字符数，压缩格式为压缩前的长度，
+     *              {@link Op#MOVE}为文件长度
+     * @param nanos 耗时
+     */
+    void onWrite(Op op, long bytes, long nanos);
+
+    void onError(Op op, Throwable e);
+
+    /**
+     * {@link lamer.groovy.GroovyFile}直接使用了已有的缓存
+     */
+    void onCacheHit(String path);
+
+    /**
+     * {@link lamer.groovy.GroovyFile}重新读取了文件
+     */
+    void onCacheMiss(String path);
+
+    IOMetrics NONE = new IOMetrics() {
+        @Override
+        public void onRead(Op op, long bytes, long nanos) {
+        }
+
+        @Override
+        public void onWrite(Op op, long bytes, long nanos) {
+        }
+
+        @Override
+        public void onError(Op op, Throwable e) {
+        }
+
+        @Override
+        public void onCacheHit(String path) {
+        }
+
+        @Override
+        public void onCacheMiss(String path) {
+        }
+    };
+}
@@ -0,0 +1,135 @@
+package lamer.groovy.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的{@link IOMetrics}实现，按{@link IOMetrics.Op}累计次数、字节数、错误数和耗时直方图
+ * <p>
+ * 使用方式：
+ * <pre>
+ *     IOStats stats = new IOStats();
+ *     FileIOUtils.setMetrics(stats);
+ *     ...
+ *     long p99 = stats.latency(IOMetrics.Op.READ_BYTES_BY_CHANNEL).percentile(99);
+ *     double ratio = stats.cacheHitRatio();
+ * </pre>
+ */
+public class IOStats implements IOMetrics {
+
+    private static final Op[] OPS = Op.values();
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(OPS.length);
+    private final AtomicLongArray mBytes = new AtomicLongArray(OPS.length);
+    private final AtomicLongArray mErrors = new AtomicLongArray(OPS.length);
+    private final LatencyHistogram[] mLatencies = new LatencyHistogram[OPS.length];
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mCacheMisses = new AtomicLong();
+
+    public IOStats() {
+        for (int i = 0; i < OPS.length; i++) {
+            mLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void onRead(Op op, long bytes, long nanos) {
+        record(op, bytes, nanos);
+    }
+
+    @Override
+    public void onWrite(Op op, long bytes, long nanos) {
+        record(op, bytes, nanos);
+    }
+
+    @Override
+    public void onError(Op op, Throwable e) {
+        mErrors.incrementAndGet(op.ordinal());
+    }
+
+    @Override
+    public void onCacheHit(String path) {
+        mCacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void onCacheMiss(String path) {
+        mCacheMisses.incrementAndGet();
+    }
+
+    private void record(Op op, long bytes, long nanos) {
+        int index = op.ordinal();
+        mCounts.incrementAndGet(index);
+        mBytes.addAndGet(index, bytes);
+        mLatencies[index].record(nanos);
+    }
+
+    public long count(Op op) {
+        return mCounts.get(op.ordinal());
+    }
+
+    public long bytes(Op op) {
+        return mBytes.get(op.ordinal());
+    }
+
+    public long errors(Op op) {
+        return mErrors.get(op.ordinal());
+    }
+
+    /**
+     * @return 纳秒耗时直方图
+     */
+    public LatencyHistogram latency(Op op) {
+        return mLatencies[op.ordinal()];
+    }
+
+    public long cacheHits() {
+        return mCacheHits.get();
+    }
+
+    public long cacheMisses() {
+        return mCacheMisses.get();
+    }
+
+    /**
+     * @return 0 ~ 1，没有访问过缓存时为0
+     */
+    public double cacheHitRatio() {
+        long hits = mCacheHits.get();
+        long total = hits + mCacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void reset() {
+        for (int i = 0; i < OPS.length; i++) {
+            mCounts.set(i, 0);
+            mBytes.set(i, 0);
+            mErrors.set(i, 0);
+            mLatencies[i].reset();
+        }
+        mCacheHits.set(0);
+        mCacheMisses.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Op op : OPS) {
+            int index = op.ordinal();
+            long count = mCounts.get(index);
+            long errors = mErrors.get(index);
+            if (count == 0 && errors == 0) {
+                continue;
+            }
+            LatencyHistogram latency = mLatencies[index];
+            builder.append(String.format(Locale.US,
+                    "%s count=%d bytes=%d errors=%d p50=%dus p99=%dus max=%dus%n",
+                    op, count, mBytes.get(index), errors,
+                    latency.percentile(50) / 1000, latency.percentile(99) / 1000, latency.max() / 1000));
+        }
+        builder.append(String.format(Locale.US, "cache hits=%d misses=%d ratio=%.3f",
+                cacheHits(), cacheMisses(), cacheHitRatio()));
+        return builder.toString();
+    }
+}
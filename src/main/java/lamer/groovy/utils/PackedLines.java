@@ -0,0 +1,224 @@
+package lamer.groovy.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * {@link FileIOUtils#readFile2PackedList(java.io.File)}的返回值，所有行的内容放在一个数组里，另用一个int[]记录每行的起点
+ * <p>
+ * 和每行一个String的ArrayList相比，省掉了每行的String和char[]对象头；内容全是Latin-1字符时每个字符只占一个字节。
+ * get时才创建这一行的String，get、equals、hashCode、contains的结果和内容相同的ArrayList&lt;String&gt;一致。
+ * <p>
+ * 只读，可以直接交给{@link lamer.groovy.GroovyArray}的所有List方法；
+ * {@link #indexOf(Object)}、{@link #contains(Object)}直接在数组上比较，不为每一行创建String。
+ */
+public final class PackedLines extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * 全是Latin-1字符时使用，否则为null
+     */
+    private final byte[] mLatin1;
+    private final char[] mChars;
+    /**
+     * 第i行为[mStarts[i], mStarts[i + 1])，长度为size + 1
+     */
+    private final int[] mStarts;
+    private final int mSize;
+
+    private PackedLines(byte[] latin1, char[] chars, int[] starts, int size) {
+        this.mLatin1 = latin1;
+        this.mChars = chars;
+        this.mStarts = starts;
+        this.mSize = size;
+    }
+
+    @Override
+    public String get(int index) {
+        checkIndex(index);
+        return string(mStarts[index], mStarts[index + 1]);
+    }
+
+    /**
+     * @return 第index行的字符数，不创建String
+     */
+    public int length(int index) {
+        checkIndex(index);
+        return mStarts[index + 1] - mStarts[index];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof String)) {
+            return -1;
+        }
+        String target = (String) o;
+        for (int i = 0; i < mSize; i++) {
+            if (contentEquals(mStarts[i], mStarts[i + 1], target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (!(o instanceof String)) {
+            return -1;
+        }
+        String target = (String) o;
+        for (int i = mSize - 1; i >= 0; i--) {
+            if (contentEquals(mStarts[i], mStarts[i + 1], target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * @return 保存内容和行起点占用的字节数，不包括对象头
+     */
+    public long memoryBytes() {
+        long content = mLatin1 != null ? mLatin1.length : mChars.length * 2L;
+        return content + mStarts.length * 4L;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + mSize);
+        }
+    }
+
+    private char charAt(int position) {
+        return mLatin1 != null ? (char) (mLatin1[position] & 0xff) : mChars[position];
+    }
+
+    private String string(int start, int end) {
+        if (mLatin1 == null) {
+            return new String(mChars, start, end - start);
+        }
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (mLatin1[start + i] & 0xff);
+        }
+        return new String(chars);
+    }
+
+    private boolean contentEquals(int start, int end, String other) {
+        if (other.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (charAt(i) != other.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取reader中的所有行，换行规则和{@link java.io.BufferedReader#readLine()}一致：
+     * '\n'、'\r'、"\r\n"都是换行，末尾的换行之后不再算一行
+     */
+    static PackedLines read(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        char[] buffer = new char[8192];
+        boolean skipLf = false;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (skipLf) {
+                    skipLf = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    builder.endLine();
+                    skipLf = c == '\r';
+                } else {
+                    builder.append(c);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 先按Latin-1写入字节数组，遇到第一个超出Latin-1的字符时整体转成char[]
+     */
+    private static final class Builder {
+        private byte[] latin1 = new byte[8192];
+        private char[] chars;
+        private int length;
+        private int[] starts = new int[1024];
+        private int lines;
+        /**
+         * 当前行有内容或者已经开始，用于判断末尾是否还有一行没有换行符
+         */
+        private boolean open;
+
+        void append(char c) {
+            open = true;
+            if (chars == null) {
+                if (c <= 0xff) {
+                    if (length == latin1.length) {
+                        latin1 = Arrays.copyOf(latin1, grow(length));
+                    }
+                    latin1[length++] = (byte) c;
+                    return;
+                }
+                chars = new char[Math.max(latin1.length, 16)];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = (char) (latin1[i] & 0xff);
+                }
+                latin1 = null;
+            }
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, grow(length));
+            }
+            chars[length++] = c;
+        }
+
+        void endLine() {
+            if (lines + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, grow(starts.length));
+            }
+            lines++;
+            starts[lines] = length;
+            open = false;
+        }
+
+        PackedLines build() {
+            if (open) {
+                endLine();
+            }
+            int[] trimmedStarts = Arrays.copyOf(starts, lines + 1);
+            if (chars == null) {
+                return new PackedLines(Arrays.copyOf(latin1, length), null, trimmedStarts, lines);
+            }
+            return new PackedLines(null, Arrays.copyOf(chars, length), trimmedStarts, lines);
+        }
+
+        private static int grow(int length) {
+            int grown = length + (length >> 1) + 16;
+            if (grown < 0) {
+                throw new OutOfMemoryError("packed lines too large");
+            }
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package lamer.groovy.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于{@link WatchService}的{@link FileWatcher}，需要Android API 26以上或JVM
+ * <p>
+ * 所有监听共用一个{@link WatchService}和一个守护线程，同一目录只注册一次。
+ * 监听文件时注册的是它的父目录，按文件名过滤事件。
+ */
+public class WatchServiceWatcher implements FileWatcher, Closeable {
+
+    private final Map<Path, Directory> mDirectories = new HashMap<>();
+    private WatchService mService;
+    private Thread mThread;
+
+    @Override
+    public synchronized Closeable watch(final File file, final Runnable onChange) {
+        if (file == null || onChange == null) {
+            return null;
+        }
+
+        File target = file.getAbsoluteFile();
+        final String name;
+        final Path dir;
+        if (target.isDirectory()) {
+            dir = target.toPath();
+            name = null;
+        } else if (target.getParentFile() != null) {
+            dir = target.getParentFile().toPath();
+            name = target.getName();
+        } else {
+            return null;
+        }
+
+        try {
+            if (mService == null) {
+                mService = FileSystems.getDefault().newWatchService();
+                mThread = new Thread(this::loop, "GroovyFileWatcher");
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+            Directory directory = mDirectories.get(dir);
+            if (directory == null || !directory.key.isValid()) {
+                // 目录被删除后key失效，重新创建的目录要重新注册，原来的监听继续生效
+                WatchKey key = dir.register(mService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                Directory registered = new Directory(key);
+                if (directory != null) {
+                    registered.registrations.addAll(directory.registrations);
+                }
+                directory = registered;
+                mDirectories.put(dir, directory);
+            }
+            final Registration registration = new Registration(name, onChange);
+            directory.registrations.add(registration);
+            return new Closeable() {
+                @Override
+                public void close() {
+                    unregister(dir, registration);
+                }
+            };
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 停止所有监听并结束监听线程
+     */
+    @Override
+    public synchronized void close() {
+        mDirectories.clear();
+        FileIOUtils.closeIOQuietly(mService);
+        mService = null;
+        mThread = null;
+    }
+
+    private synchronized void unregister(Path dir, Registration registration) {
+        Directory directory = mDirectories.get(dir);
+        if (directory == null) {
+            return;
+        }
+        directory.registrations.remove(registration);
+        if (directory.registrations.isEmpty()) {
+            directory.key.cancel();
+            mDirectories.remove(dir);
+        }
+    }
+
+    /**
+     * key失效（目录被删除）后移除对应的目录，之后的{@link #watch(File, Runnable)}会重新注册
+     */
+    private synchronized void removeInvalid(Path dir, WatchKey key) {
+        Directory directory = mDirectories.get(dir);
+        if (directory != null && directory.key == key) {
+            mDirectories.remove(dir);
+        }
+    }
+
+    private synchronized List<Runnable> matches(Path dir, List<WatchEvent<?>> events) {
+        Directory directory = mDirectories.get(dir);
+        if (directory == null) {
+            return null;
+        }
+        List<Runnable> callbacks = new ArrayList<>();
+        for (Registration registration : directory.registrations) {
+            for (WatchEvent<?> event : events) {
+                Object context = event.context();
+                if (registration.name == null
+                        || event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || (context != null && registration.name.equals(context.toString()))) {
+                    callbacks.add(registration.onChange);
+                    break;
+                }
+            }
+        }
+        return callbacks;
+    }
+
+    private void loop() {
+        WatchService service;
+        synchronized (this) {
+            service = mService;
+        }
+        while (service != null) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            List<Runnable> callbacks = matches(dir, key.pollEvents());
+            if (!key.reset()) {
+                removeInvalid(dir, key);
+            }
+            if (callbacks != null) {
+                for (Runnable callback : callbacks) {
+                    try {
+                        callback.run();
+                    } catch (RuntimeException e) {
+                        // 所有监听共用这一个线程，一个回调出错不能让其他监听停止
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Directory {
+        final WatchKey key;
+        final List<Registration> registrations = new ArrayList<>();
+
+        Directory(WatchKey key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Registration {
+        final String name;
+        final Runnable onChange;
+
+        Registration(String name, Runnable onChange) {
+            this.name = name;
+            this.onChange = onChange;
+        }
+    }
+}